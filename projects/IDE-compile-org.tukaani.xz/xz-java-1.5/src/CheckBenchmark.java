@@ -0,0 +1,99 @@
+/*
+ * CheckBenchmark
+ *
+ * This file has been put into the public domain.
+ * You can do whatever you want with this file.
+ */
+
+import java.util.Random;
+import org.tukaani.xz.*;
+import org.tukaani.xz.check.Check;
+
+/**
+ * Measures the throughput of the integrity check implementations.
+ * <p>
+ * CRC32, CRC64 and SHA-256 are run over the same buffer of random data,
+ * and the best time of a few rounds is reported.
+ * A plain byte-at-a-time CRC64 is included as a baseline for the
+ * table-driven <code>CRC64</code>.
+ * <p>
+ * Two optional arguments are supported: the buffer size in MiB
+ * (the default is 64) and the number of rounds (the default is 10).
+ */
+class CheckBenchmark {
+    private static final long CRC64_POLY = 0xC96C5795D7870F42L;
+    private static final long[] crc64Table = new long[256];
+
+    static {
+        for (int b = 0; b < 256; ++b) {
+            long r = b;
+            for (int i = 0; i < 8; ++i) {
+                if ((r & 1) == 1)
+                    r = (r >>> 1) ^ CRC64_POLY;
+                else
+                    r >>>= 1;
+            }
+
+            crc64Table[b] = r;
+        }
+    }
+
+    private static long bytewiseCRC64(byte[] buf) {
+        long crc = -1;
+        for (int i = 0; i < buf.length; ++i)
+            crc = crc64Table[(buf[i] ^ (int)crc) & 0xFF] ^ (crc >>> 8);
+
+        return ~crc;
+    }
+
+    private static void report(String name, long bytes, long nanos) {
+        double mibPerSec = (bytes / 1048576.0) / (nanos / 1e9);
+        System.out.println(name + ": " + (int)mibPerSec + " MiB/s");
+    }
+
+    public static void main(String[] args) throws Exception {
+        int size = (args.length >= 1 ? Integer.parseInt(args[0]) : 64) << 20;
+        int rounds = args.length >= 2 ? Integer.parseInt(args[1]) : 10;
+
+        byte[] buf = new byte[size];
+        new Random(0).nextBytes(buf);
+
+        long best = Long.MAX_VALUE;
+        long expected = 0;
+        for (int round = 0; round < rounds; ++round) {
+            long start = System.nanoTime();
+            expected = bytewiseCRC64(buf);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        report("CRC64 (byte at a time)", size, best);
+
+        int[] checkTypes = { XZ.CHECK_CRC32, XZ.CHECK_CRC64,
+                             XZ.CHECK_SHA256 };
+
+        for (int i = 0; i < checkTypes.length; ++i) {
+            Check check = Check.getInstance(checkTypes[i]);
+            byte[] result = null;
+
+            best = Long.MAX_VALUE;
+            for (int round = 0; round < rounds; ++round) {
+                long start = System.nanoTime();
+                check.update(buf, 0, buf.length);
+                result = check.finish();
+                best = Math.min(best, System.nanoTime() - start);
+            }
+
+            report(check.getName(), size, best);
+
+            if (checkTypes[i] == XZ.CHECK_CRC64) {
+                long value = 0;
+                for (int j = 0; j < 8; ++j)
+                    value |= (long)(result[j] & 0xFF) << (j * 8);
+
+                if (value != expected)
+                    throw new IllegalStateException(
+                            "CRC64 doesn't match the byte-at-a-time result");
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * ArrayCache
+ *
+ * This file has been put into the public domain.
+ * You can do whatever you want with this file.
+ */
+
+package org.tukaani.xz;
+
+/**
+ * Caches large arrays so that they can be reused by later streams.
+ * <p>
+ * The LZMA2 encoder and decoder need big buffers whose size depends on
+ * the dictionary size. Allocating and zeroing them for every stream or
+ * every XZ Block can take more time than compressing or decompressing
+ * small inputs. The streams get these buffers from an
+ * <code>ArrayCache</code> when they are created and give them back
+ * when they are finished or closed.
+ * <p>
+ * This base class doesn't cache anything: <code>getByteArray</code> and
+ * <code>getIntArray</code> allocate new arrays and <code>putArray</code>
+ * does nothing. This is also the default cache, so caching has to be
+ * enabled explicitly, typically with
+ * <blockquote><pre>
+ * ArrayCache.setDefaultCache(BasicArrayCache.getInstance());
+ * </pre></blockquote>
+ * <p>
+ * An array must not be used after it has been given back to the cache.
+ * Because of this, a stream must not be used after it has been finished
+ * or closed even if it happens to still accept method calls.
+ * <p>
+ * Subclasses must be thread safe if the same cache is used by streams
+ * in more than one thread, which is the case with the default cache.
+ *
+ * @see BasicArrayCache
+ */
+public class ArrayCache {
+    private static final ArrayCache dummyCache = new ArrayCache();
+
+    private static ArrayCache defaultCache = dummyCache;
+
+    /**
+     * Gets a cache that doesn't cache anything.
+     */
+    public static ArrayCache getDummyCache() {
+        return dummyCache;
+    }
+
+    /**
+     * Gets the cache that is used by the streams that aren't given
+     * a cache explicitly. Initially this is the dummy cache.
+     */
+    public static synchronized ArrayCache getDefaultCache() {
+        return defaultCache;
+    }
+
+    /**
+     * Sets the cache that is used by the streams that aren't given
+     * a cache explicitly. Streams that have already been created
+     * keep using the cache that was the default when they were created.
+     *
+     * @param       arrayCache  the new default cache
+     *
+     * @throws      NullPointerException if <code>arrayCache</code>
+     *                          is <code>null</code>
+     */
+    public static synchronized void setDefaultCache(ArrayCache arrayCache) {
+        if (arrayCache == null)
+            throw new NullPointerException();
+
+        defaultCache = arrayCache;
+    }
+
+    /**
+     * Creates a cache that doesn't cache anything. Use
+     * {@link #getDummyCache()} instead of creating new instances
+     * of this class.
+     */
+    public ArrayCache() {}
+
+    /**
+     * Gets a byte array of exactly <code>size</code> elements.
+     *
+     * @param       size        number of elements in the array
+     *
+     * @param       fillWithZeros
+     *                          if <code>true</code>, all the elements
+     *                          of the returned array are zero; if
+     *                          <code>false</code>, the array may contain
+     *                          data from its previous user
+     */
+    public byte[] getByteArray(int size, boolean fillWithZeros) {
+        return new byte[size];
+    }
+
+    /**
+     * Gives a byte array back to the cache. The caller must not use
+     * the array after calling this.
+     */
+    public void putArray(byte[] array) {}
+
+    /**
+     * Gets an int array of exactly <code>size</code> elements.
+     *
+     * @param       size        number of elements in the array
+     *
+     * @param       fillWithZeros
+     *                          if <code>true</code>, all the elements
+     *                          of the returned array are zero; if
+     *                          <code>false</code>, the array may contain
+     *                          data from its previous user
+     */
+    public int[] getIntArray(int size, boolean fillWithZeros) {
+        return new int[size];
+    }
+
+    /**
+     * Gives an int array back to the cache. The caller must not use
+     * the array after calling this.
+     */
+    public void putArray(int[] array) {}
+}
@@ -0,0 +1,195 @@
+/*
+ * BasicArrayCache
+ *
+ * This file has been put into the public domain.
+ * You can do whatever you want with this file.
+ */
+
+package org.tukaani.xz;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+
+/**
+ * A thread safe {@link ArrayCache} that keeps the arrays in
+ * soft references.
+ * <p>
+ * Arrays are grouped by their exact size. Only a limited number of
+ * arrays is kept for each size and only a limited number of different
+ * sizes is remembered; the sizes that were used least recently are
+ * forgotten first. Because the arrays are softly referenced, the garbage
+ * collector may still reclaim them when memory is running low.
+ * <p>
+ * Arrays smaller than <code>CACHEABLE_SIZE_MIN</code> elements are
+ * never cached because allocating them is cheap.
+ */
+public class BasicArrayCache extends ArrayCache {
+    /**
+     * Arrays smaller than this many elements are not cached.
+     */
+    public static final int CACHEABLE_SIZE_MIN = 32 << 10;
+
+    /**
+     * Number of different array sizes that are remembered separately
+     * for byte and int arrays.
+     */
+    private static final int STACKS_MAX = 32;
+
+    /**
+     * Number of arrays that are kept for one array size.
+     */
+    private static final int ELEMENTS_PER_STACK = 512;
+
+    private static final BasicArrayCache instance = new BasicArrayCache();
+
+    /**
+     * Fixed-size stack of softly referenced arrays. When the stack is
+     * full, pushing a new array drops the oldest one.
+     */
+    private static class CyclicStack {
+        private final Reference[] elements = new Reference[ELEMENTS_PER_STACK];
+        private int pos = 0;
+
+        Object pop() {
+            for (int i = 0; i < ELEMENTS_PER_STACK; ++i) {
+                Reference ref = elements[pos];
+                if (ref == null)
+                    return null;
+
+                elements[pos] = null;
+                pos = (pos + ELEMENTS_PER_STACK - 1) % ELEMENTS_PER_STACK;
+
+                Object array = ref.get();
+                if (array != null)
+                    return array;
+            }
+
+            return null;
+        }
+
+        void push(Object array) {
+            pos = (pos + 1) % ELEMENTS_PER_STACK;
+            elements[pos] = new SoftReference(array);
+        }
+    }
+
+    /**
+     * Maps an array size to a <code>CyclicStack</code> and remembers
+     * only the sizes that were used most recently. There are at most
+     * <code>STACKS_MAX</code> sizes, so they are searched linearly.
+     */
+    private static class CacheMap {
+        private final int[] sizes = new int[STACKS_MAX];
+        private final CyclicStack[] stacks = new CyclicStack[STACKS_MAX];
+        private int count = 0;
+
+        /**
+         * Gets the stack for the given size and marks the size as
+         * the most recently used one. If there is no stack yet and
+         * <code>create</code> is <code>true</code>, a new stack is
+         * added, forgetting the least recently used size if needed.
+         */
+        CyclicStack get(int size, boolean create) {
+            int i = 0;
+            while (i < count && sizes[i] != size)
+                ++i;
+
+            CyclicStack stack;
+            if (i < count) {
+                stack = stacks[i];
+            } else if (!create) {
+                return null;
+            } else {
+                stack = new CyclicStack();
+                if (count < STACKS_MAX)
+                    ++count;
+
+                i = count - 1;
+            }
+
+            System.arraycopy(sizes, 0, sizes, 1, i);
+            System.arraycopy(stacks, 0, stacks, 1, i);
+            sizes[0] = size;
+            stacks[0] = stack;
+            return stack;
+        }
+    }
+
+    private final CacheMap byteArrayCache = new CacheMap();
+    private final CacheMap intArrayCache = new CacheMap();
+
+    /**
+     * Gets a shared instance of <code>BasicArrayCache</code>.
+     */
+    public static BasicArrayCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates a new empty cache. Usually {@link #getInstance()} should be
+     * used so that all streams share the same arrays.
+     */
+    public BasicArrayCache() {}
+
+    private static Object getArray(CacheMap cache, int size) {
+        if (size < CACHEABLE_SIZE_MIN)
+            return null;
+
+        CyclicStack stack;
+        synchronized (cache) {
+            stack = cache.get(size, false);
+        }
+
+        if (stack == null)
+            return null;
+
+        synchronized (stack) {
+            return stack.pop();
+        }
+    }
+
+    private static void putArray(CacheMap cache, Object array, int size) {
+        if (size < CACHEABLE_SIZE_MIN)
+            return;
+
+        CyclicStack stack;
+        synchronized (cache) {
+            stack = cache.get(size, true);
+        }
+
+        synchronized (stack) {
+            stack.push(array);
+        }
+    }
+
+    public byte[] getByteArray(int size, boolean fillWithZeros) {
+        byte[] array = (byte[])getArray(byteArrayCache, size);
+
+        if (array == null)
+            array = new byte[size];
+        else if (fillWithZeros)
+            Arrays.fill(array, (byte)0x00);
+
+        return array;
+    }
+
+    public void putArray(byte[] array) {
+        putArray(byteArrayCache, array, array.length);
+    }
+
+    public int[] getIntArray(int size, boolean fillWithZeros) {
+        int[] array = (int[])getArray(intArrayCache, size);
+
+        if (array == null)
+            array = new int[size];
+        else if (fillWithZeros)
+            Arrays.fill(array, 0);
+
+        return array;
+    }
+
+    public void putArray(int[] array) {
+        putArray(intArrayCache, array, array.length);
+    }
+}
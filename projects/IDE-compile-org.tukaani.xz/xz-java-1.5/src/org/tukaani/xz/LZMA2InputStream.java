@@ -45,9 +45,9 @@ public class LZMA2InputStream extends InputStream {
 
     private DataInputStream in;
 
+    private ArrayCache arrayCache;
     private final LZDecoder lz;
-    private final RangeDecoderFromBuffer rc
-            = new RangeDecoderFromBuffer(COMPRESSED_SIZE_MAX);
+    private final RangeDecoderFromBuffer rc;
     private LZMADecoder lzma;
 
     private int uncompressedSize = 0;
@@ -136,13 +136,42 @@ public class LZMA2InputStream extends InputStream {
      *                          to use no preset dictionary
      */
     public LZMA2InputStream(InputStream in, int dictSize, byte[] presetDict) {
+        this(in, dictSize, presetDict, ArrayCache.getDefaultCache());
+    }
+
+    /**
+     * Creates a new LZMA2 decompressor that takes its buffers from
+     * the given cache.
+     * <p>
+     * This is like <code>LZMA2InputStream(InputStream, int, byte[])</code>
+     * except that the dictionary buffer and the input buffer are taken from
+     * <code>arrayCache</code> instead of the default cache. They are given
+     * back when the end of the LZMA2 data is reached or when the stream
+     * is closed, whichever happens first.
+     *
+     * @param       in          input stream from which LZMA2-compressed
+     *                          data is read
+     *
+     * @param       dictSize    LZMA2 dictionary size as bytes, must be
+     *                          in the range [<code>DICT_SIZE_MIN</code>,
+     *                          <code>DICT_SIZE_MAX</code>]
+     *
+     * @param       presetDict  preset dictionary or <code>null</code>
+     *                          to use no preset dictionary
+     *
+     * @param       arrayCache  cache to use for the buffers
+     */
+    public LZMA2InputStream(InputStream in, int dictSize, byte[] presetDict,
+                            ArrayCache arrayCache) {
         // Check for null because otherwise null isn't detect
         // in this constructor.
-        if (in == null)
+        if (in == null || arrayCache == null)
             throw new NullPointerException();
 
+        this.arrayCache = arrayCache;
         this.in = new DataInputStream(in);
-        this.lz = new LZDecoder(getDictSize(dictSize), presetDict);
+        this.rc = new RangeDecoderFromBuffer(COMPRESSED_SIZE_MAX, arrayCache);
+        this.lz = new LZDecoder(getDictSize(dictSize), presetDict, arrayCache);
 
         if (presetDict != null && presetDict.length > 0)
             needDictReset = false;
@@ -256,6 +285,7 @@ public class LZMA2InputStream extends InputStream {
 
         if (control == 0x00) {
             endReached = true;
+            putArraysToCache();
             return;
         }
 
@@ -347,6 +377,8 @@ public class LZMA2InputStream extends InputStream {
      * @throws  IOException if thrown by <code>in.close()</code>
      */
     public void close() throws IOException {
+        putArraysToCache();
+
         if (in != null) {
             try {
                 in.close();
@@ -355,4 +387,12 @@ public class LZMA2InputStream extends InputStream {
             }
         }
     }
+
+    private void putArraysToCache() {
+        if (arrayCache != null) {
+            lz.putArraysToCache(arrayCache);
+            rc.putArraysToCache(arrayCache);
+            arrayCache = null;
+        }
+    }
 }
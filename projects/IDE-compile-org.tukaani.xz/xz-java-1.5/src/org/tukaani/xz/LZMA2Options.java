@@ -533,7 +533,7 @@ public class LZMA2Options extends FilterOptions {
         if (mode == MODE_UNCOMPRESSED)
             return new UncompressedLZMA2OutputStream(out);
 
-        return new LZMA2OutputStream(out, this);
+        return new LZMA2OutputStream(out, this, ArrayCache.getDefaultCache());
     }
 
     /**
@@ -22,6 +22,8 @@ class LZMA2OutputStream extends FinishableOutputStream {
     private FinishableOutputStream out;
     private final DataOutputStream outData;
 
+    private ArrayCache arrayCache;
+
     private final LZEncoder lz;
     private final RangeEncoder rc;
     private final LZMAEncoder lzma;
@@ -51,13 +53,15 @@ class LZMA2OutputStream extends FinishableOutputStream {
                                                options.getMatchFinder());
     }
 
-    LZMA2OutputStream(FinishableOutputStream out, LZMA2Options options) {
+    LZMA2OutputStream(FinishableOutputStream out, LZMA2Options options,
+                      ArrayCache arrayCache) {
         if (out == null)
             throw new NullPointerException();
 
+        this.arrayCache = arrayCache;
         this.out = out;
         outData = new DataOutputStream(out);
-        rc = new RangeEncoder(COMPRESSED_SIZE_MAX);
+        rc = new RangeEncoder(COMPRESSED_SIZE_MAX, arrayCache);
 
         int dictSize = options.getDictSize();
         int extraSizeBefore = getExtraSizeBefore(dictSize);
@@ -65,7 +69,8 @@ class LZMA2OutputStream extends FinishableOutputStream {
                 options.getLc(), options.getLp(), options.getPb(),
                 options.getMode(),
                 dictSize, extraSizeBefore, options.getNiceLen(),
-                options.getMatchFinder(), options.getDepthLimit());
+                options.getMatchFinder(), options.getDepthLimit(),
+                arrayCache);
 
         lz = lzma.getLZEncoder();
 
@@ -198,6 +203,15 @@ class LZMA2OutputStream extends FinishableOutputStream {
         }
 
         finished = true;
+        putArraysToCache();
+    }
+
+    private void putArraysToCache() {
+        if (arrayCache != null) {
+            lz.putArraysToCache(arrayCache);
+            rc.putArraysToCache(arrayCache);
+            arrayCache = null;
+        }
     }
 
     public void flush() throws IOException {
@@ -255,6 +269,8 @@ class LZMA2OutputStream extends FinishableOutputStream {
             out = null;
         }
 
+        putArraysToCache();
+
         if (exception != null)
             throw exception;
     }
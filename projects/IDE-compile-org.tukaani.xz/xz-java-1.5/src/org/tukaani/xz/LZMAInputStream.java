@@ -47,6 +47,7 @@ public class LZMAInputStream extends InputStream {
     public static final int DICT_SIZE_MAX = Integer.MAX_VALUE & ~15;
 
     private InputStream in;
+    private ArrayCache arrayCache;
     private LZDecoder lz;
     private RangeDecoderFromStream rc;
     private LZMADecoder lzma;
@@ -415,7 +416,8 @@ public class LZMAInputStream extends InputStream {
         if (uncompSize >= 0 && dictSize > uncompSize)
             dictSize = getDictSize((int)uncompSize);
 
-        lz = new LZDecoder(getDictSize(dictSize), presetDict);
+        arrayCache = ArrayCache.getDefaultCache();
+        lz = new LZDecoder(getDictSize(dictSize), presetDict, arrayCache);
         rc = new RangeDecoderFromStream(in);
         lzma = new LZMADecoder(lz, rc, lc, lp, pb);
         remainingSize = uncompSize;
@@ -559,6 +561,11 @@ public class LZMAInputStream extends InputStream {
      */
     public void close() throws IOException {
         if (in != null) {
+            if (arrayCache != null) {
+                lz.putArraysToCache(arrayCache);
+                arrayCache = null;
+            }
+
             try {
                 in.close();
             } finally {
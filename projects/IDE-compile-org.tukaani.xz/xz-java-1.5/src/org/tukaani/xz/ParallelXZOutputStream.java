@@ -0,0 +1,614 @@
+/*
+ * ParallelXZOutputStream
+ *
+ * This file has been put into the public domain.
+ * You can do whatever you want with this file.
+ */
+
+package org.tukaani.xz;
+
+import java.io.OutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedList;
+import org.tukaani.xz.common.EncoderUtil;
+import org.tukaani.xz.check.Check;
+import org.tukaani.xz.index.IndexEncoder;
+
+/**
+ * Compresses into the .xz file format using multiple threads.
+ * <p>
+ * The input is split into XZ Blocks of a fixed uncompressed size. Every
+ * Block is compressed by a worker thread with its own
+ * <code>BlockOutputStream</code> and filter chain, and the finished Blocks
+ * are written to the underlying stream in the original order. The result
+ * is a normal single-Stream .xz file that any XZ decoder can decompress.
+ * Because the file always has multiple Blocks, it is also well suited for
+ * {@link SeekableXZInputStream}.
+ * <p>
+ * Each Block starts with an empty dictionary, so the compression ratio is
+ * a little worse than with {@link XZOutputStream}. The bigger the Blocks,
+ * the smaller the difference. By default the Block size is three times
+ * the LZMA2 dictionary size but at least 1&nbsp;MiB, which is the same
+ * default as the threaded encoder in XZ Utils uses.
+ *
+ * <h4>Memory usage</h4>
+ * <p>
+ * Every thread needs the encoder memory of the filter chain. In addition,
+ * up to two Blocks per thread are kept in memory, both as uncompressed
+ * input and as compressed output, while waiting to be compressed or
+ * written out.
+ *
+ * <h4>Example</h4>
+ * <p>
+ * Compressing with preset level <code>6</code> using four threads:
+ * <p><blockquote><pre>
+ * FileOutputStream outfile = new FileOutputStream("foo.xz");
+ * ParallelXZOutputStream outxz = new ParallelXZOutputStream(
+ *         outfile, new LZMA2Options(6), 4);
+ * </pre></blockquote>
+ *
+ * @see XZOutputStream
+ */
+public class ParallelXZOutputStream extends FinishableOutputStream {
+    /**
+     * Block size is at least this big when it is derived from
+     * the LZMA2 dictionary size.
+     */
+    private static final int BLOCK_SIZE_MIN = 1 << 20;
+
+    private OutputStream out;
+    private final int checkType;
+    private final IndexEncoder index = new IndexEncoder();
+    private final FilterEncoder[] filters;
+    private final int blockSize;
+    private final int maxPending;
+
+    /**
+     * Lock protecting <code>queue</code>, <code>pending</code>,
+     * <code>stopped</code> and the <code>done</code> flags of Blocks.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Blocks waiting for a worker thread.
+     */
+    private final LinkedList queue = new LinkedList();
+
+    /**
+     * Blocks not yet written to <code>out</code>, in the input order.
+     */
+    private final LinkedList pending = new LinkedList();
+
+    /**
+     * Input buffers of written Blocks that can be filled again.
+     */
+    private final LinkedList freeBuffers = new LinkedList();
+
+    private final Thread[] workers;
+    private boolean stopped = false;
+
+    private byte[] buf;
+    private int bufPos = 0;
+
+    private IOException exception = null;
+    private boolean finished = false;
+
+    private final byte[] tempBuf = new byte[1];
+
+    /**
+     * One Block of input and, once compressed, its encoded form.
+     */
+    private static class Job {
+        final byte[] in;
+        final int inSize;
+        byte[] out = null;
+        long unpaddedSize;
+        long uncompressedSize;
+        Throwable error = null;
+        boolean done = false;
+
+        Job(byte[] in, int inSize) {
+            this.in = in;
+            this.inSize = inSize;
+        }
+    }
+
+    /**
+     * Creates a new multi-threaded XZ compressor using one filter,
+     * CRC64 as the integrity check and the default Block size.
+     *
+     * @param       out         output stream to which the compressed data
+     *                          will be written
+     *
+     * @param       filterOptions
+     *                          filter options to use
+     *
+     * @param       threads     number of compression threads
+     *
+     * @throws      UnsupportedOptionsException
+     *                          invalid filter chain
+     *
+     * @throws      IOException may be thrown from <code>out</code>
+     */
+    public ParallelXZOutputStream(OutputStream out,
+                                  FilterOptions filterOptions, int threads)
+            throws IOException {
+        this(out, new FilterOptions[] { filterOptions }, XZ.CHECK_CRC64,
+             getDefaultBlockSize(new FilterOptions[] { filterOptions }),
+             threads);
+    }
+
+    /**
+     * Creates a new multi-threaded XZ compressor using 1-4 filters,
+     * the specified integrity check type and the default Block size.
+     *
+     * @param       out         output stream to which the compressed data
+     *                          will be written
+     *
+     * @param       filterOptions
+     *                          array of filter options to use
+     *
+     * @param       checkType   type of the integrity check,
+     *                          for example XZ.CHECK_CRC32
+     *
+     * @param       threads     number of compression threads
+     *
+     * @throws      UnsupportedOptionsException
+     *                          invalid filter chain
+     *
+     * @throws      IOException may be thrown from <code>out</code>
+     */
+    public ParallelXZOutputStream(OutputStream out,
+                                  FilterOptions[] filterOptions,
+                                  int checkType, int threads)
+            throws IOException {
+        this(out, filterOptions, checkType,
+             getDefaultBlockSize(filterOptions), threads);
+    }
+
+    /**
+     * Creates a new multi-threaded XZ compressor using 1-4 filters,
+     * the specified integrity check type and Block size.
+     *
+     * @param       out         output stream to which the compressed data
+     *                          will be written
+     *
+     * @param       filterOptions
+     *                          array of filter options to use
+     *
+     * @param       checkType   type of the integrity check,
+     *                          for example XZ.CHECK_CRC32
+     *
+     * @param       blockSize   uncompressed size of each Block except
+     *                          possibly the last one
+     *
+     * @param       threads     number of compression threads
+     *
+     * @throws      UnsupportedOptionsException
+     *                          invalid filter chain
+     *
+     * @throws      IOException may be thrown from <code>out</code>
+     */
+    public ParallelXZOutputStream(OutputStream out,
+                                  FilterOptions[] filterOptions,
+                                  int checkType, int blockSize, int threads)
+            throws IOException {
+        if (blockSize <= 0)
+            throw new IllegalArgumentException(
+                    "Block size must be positive: " + blockSize);
+
+        if (threads <= 0)
+            throw new IllegalArgumentException(
+                    "Number of threads must be positive: " + threads);
+
+        if (filterOptions.length < 1 || filterOptions.length > 4)
+            throw new UnsupportedOptionsException(
+                        "XZ filter chain must be 1-4 filters");
+
+        filters = new FilterEncoder[filterOptions.length];
+        for (int i = 0; i < filterOptions.length; ++i)
+            filters[i] = filterOptions[i].getFilterEncoder();
+
+        RawCoder.validate(filters);
+
+        // Fail early on an unsupported check instead of in a worker.
+        Check.getInstance(checkType);
+
+        this.out = out;
+        this.checkType = checkType;
+        this.blockSize = blockSize;
+        this.maxPending = 2 * threads;
+        buf = new byte[blockSize];
+
+        encodeStreamHeader();
+
+        workers = new Thread[threads];
+        for (int i = 0; i < threads; ++i) {
+            workers[i] = new Thread("XZ encoder " + i) {
+                public void run() {
+                    work();
+                }
+            };
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Gets the default Block size for the given filter chain: three times
+     * the LZMA2 dictionary size, but at least 1&nbsp;MiB.
+     *
+     * @param       filterOptions
+     *                          array of filter options to use
+     *
+     * @return      default Block size in bytes
+     */
+    public static int getDefaultBlockSize(FilterOptions[] filterOptions) {
+        FilterOptions last = filterOptions[filterOptions.length - 1];
+        if (!(last instanceof LZMA2Options))
+            return BLOCK_SIZE_MIN;
+
+        long size = 3L * ((LZMA2Options)last).getDictSize();
+        return (int)Math.min(Math.max(size, BLOCK_SIZE_MIN),
+                             Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * Writes one byte to be compressed.
+     *
+     * @throws      XZIOException
+     *                          XZ Stream has grown too big
+     *
+     * @throws      XZIOException
+     *                          <code>finish()</code> or <code>close()</code>
+     *                          was already called
+     *
+     * @throws      IOException may be thrown by the underlying output stream
+     */
+    public void write(int b) throws IOException {
+        tempBuf[0] = (byte)b;
+        write(tempBuf, 0, 1);
+    }
+
+    /**
+     * Writes an array of bytes to be compressed. Full Blocks are handed
+     * to the worker threads. This blocks only if too many Blocks are
+     * already waiting to be compressed or written out.
+     *
+     * @param       buf         buffer of bytes to be written
+     * @param       off         start offset in <code>buf</code>
+     * @param       len         number of bytes to write
+     *
+     * @throws      XZIOException
+     *                          XZ Stream has grown too big
+     *
+     * @throws      XZIOException
+     *                          <code>finish()</code> or <code>close()</code>
+     *                          was already called and len &gt; 0
+     *
+     * @throws      IOException may be thrown by the underlying output stream
+     */
+    public void write(byte[] buf, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len < 0 || off + len > buf.length)
+            throw new IndexOutOfBoundsException();
+
+        if (exception != null)
+            throw exception;
+
+        if (finished)
+            throw new XZIOException("Stream finished or closed");
+
+        try {
+            while (len > 0) {
+                int copySize = Math.min(blockSize - bufPos, len);
+                System.arraycopy(buf, off, this.buf, bufPos, copySize);
+                bufPos += copySize;
+                off += copySize;
+                len -= copySize;
+
+                if (bufPos == blockSize)
+                    submitBlock();
+            }
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Finishes the current XZ Block (but not the whole XZ Stream).
+     * The Block is only handed to a worker thread; it may not have been
+     * written to the underlying stream when this function returns.
+     * <p>
+     * If there is no unfinished Block open, this function will do nothing.
+     * (No empty XZ Block will be created.)
+     *
+     * @throws      XZIOException
+     *                          XZ Stream has grown too big
+     *
+     * @throws      XZIOException
+     *                          stream finished or closed
+     *
+     * @throws      IOException may be thrown by the underlying output stream
+     */
+    public void endBlock() throws IOException {
+        if (exception != null)
+            throw exception;
+
+        if (finished)
+            throw new XZIOException("Stream finished or closed");
+
+        try {
+            submitBlock();
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Finishes the current XZ Block, waits until all Blocks have been
+     * compressed and written, and calls <code>out.flush()</code>.
+     * <p>
+     * Since the Blocks are compressed independently, flushing always
+     * ends the current Block. Calling this function often will increase
+     * the compressed size a lot.
+     *
+     * @throws      XZIOException
+     *                          XZ Stream has grown too big
+     *
+     * @throws      XZIOException
+     *                          stream finished or closed
+     *
+     * @throws      IOException may be thrown by the underlying output stream
+     */
+    public void flush() throws IOException {
+        endBlock();
+
+        try {
+            writeCompleted(0);
+            out.flush();
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Finishes compression without closing the underlying stream.
+     * No more data can be written to this stream after finishing
+     * (calling <code>write</code> with an empty buffer is OK).
+     * The worker threads are stopped.
+     * <p>
+     * Repeated calls to <code>finish()</code> do nothing unless
+     * an exception was thrown by this stream earlier. In that case
+     * the same exception is thrown again.
+     *
+     * @throws      XZIOException
+     *                          XZ Stream has grown too big
+     *
+     * @throws      IOException may be thrown by the underlying output stream
+     */
+    public void finish() throws IOException {
+        if (!finished) {
+            endBlock();
+
+            try {
+                writeCompleted(0);
+                index.encode(out);
+                encodeStreamFooter();
+            } catch (IOException e) {
+                fail(e);
+                throw e;
+            }
+
+            stopWorkers();
+            finished = true;
+        }
+    }
+
+    /**
+     * Finishes compression and closes the underlying stream.
+     * The underlying stream <code>out</code> is closed and the worker
+     * threads are stopped even if finishing fails, also when it fails
+     * with an unchecked exception or an error. If both finishing and
+     * closing fail, the exception thrown by <code>finish()</code> is thrown
+     * and the exception from the failed <code>out.close()</code> is lost.
+     *
+     * @throws      XZIOException
+     *                          XZ Stream has grown too big
+     *
+     * @throws      IOException may be thrown by the underlying output stream
+     */
+    public void close() throws IOException {
+        if (out != null) {
+            try {
+                finish();
+            } catch (IOException e) {
+                // The exception has been stored in this.exception.
+            } finally {
+                stopWorkers();
+
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    if (exception == null)
+                        exception = e;
+                }
+
+                out = null;
+            }
+        }
+
+        if (exception != null)
+            throw exception;
+    }
+
+    /**
+     * Hands the buffered input to the worker threads as one Block and
+     * writes out the Blocks that are ready.
+     */
+    private void submitBlock() throws IOException {
+        if (bufPos == 0)
+            return;
+
+        Job job = new Job(buf, bufPos);
+        synchronized (lock) {
+            queue.addLast(job);
+            pending.addLast(job);
+            lock.notifyAll();
+            buf = freeBuffers.isEmpty() ? new byte[blockSize]
+                                        : (byte[])freeBuffers.removeFirst();
+        }
+
+        bufPos = 0;
+        writeCompleted(maxPending);
+    }
+
+    /**
+     * Writes the compressed Blocks that are ready, in the input order.
+     * Waits for the oldest Block while more than <code>limit</code> Blocks
+     * are pending.
+     */
+    private void writeCompleted(int limit) throws IOException {
+        while (true) {
+            Job job;
+            synchronized (lock) {
+                if (pending.isEmpty())
+                    return;
+
+                job = (Job)pending.getFirst();
+                if (!job.done && pending.size() <= limit)
+                    return;
+
+                try {
+                    while (!job.done)
+                        lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new XZIOException(
+                            "Interrupted while waiting for an XZ Block");
+                }
+
+                pending.removeFirst();
+            }
+
+            if (job.error != null)
+                failJob(job.error);
+
+            out.write(job.out);
+            index.add(job.unpaddedSize, job.uncompressedSize);
+
+            synchronized (lock) {
+                freeBuffers.addLast(job.in);
+            }
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Job job;
+            synchronized (lock) {
+                try {
+                    while (queue.isEmpty() && !stopped)
+                        lock.wait();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                if (stopped)
+                    return;
+
+                job = (Job)queue.removeFirst();
+            }
+
+            try {
+                ByteArrayOutputStream bufStream = new ByteArrayOutputStream(
+                        job.inSize / 2 + 1024);
+                BlockOutputStream blockEncoder = new BlockOutputStream(
+                        bufStream, filters, Check.getInstance(checkType));
+                blockEncoder.write(job.in, 0, job.inSize);
+                blockEncoder.finish();
+                job.out = bufStream.toByteArray();
+                job.unpaddedSize = blockEncoder.getUnpaddedSize();
+                job.uncompressedSize = blockEncoder.getUncompressedSize();
+            } catch (Throwable t) {
+                job.error = t;
+            }
+
+            synchronized (lock) {
+                job.done = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void fail(IOException e) {
+        exception = e;
+        stopWorkers();
+    }
+
+    /**
+     * Makes the error of a worker thread the sticky exception of this
+     * stream and throws it. Unchecked exceptions and errors are thrown
+     * as is, and later calls throw an <code>XZIOException</code> that
+     * has them as the cause.
+     */
+    private void failJob(Throwable t) throws IOException {
+        if (t instanceof IOException) {
+            fail((IOException)t);
+            throw (IOException)t;
+        }
+
+        XZIOException e = new XZIOException(
+                "Compressing an XZ Block failed: " + t);
+        e.initCause(t);
+        fail(e);
+
+        if (t instanceof RuntimeException)
+            throw (RuntimeException)t;
+
+        if (t instanceof Error)
+            throw (Error)t;
+
+        throw e;
+    }
+
+    private void stopWorkers() {
+        synchronized (lock) {
+            stopped = true;
+            queue.clear();
+            freeBuffers.clear();
+            lock.notifyAll();
+        }
+    }
+
+    private void encodeStreamFlags(byte[] buf, int off) {
+        buf[off] = 0x00;
+        buf[off + 1] = (byte)checkType;
+    }
+
+    private void encodeStreamHeader() throws IOException {
+        out.write(XZ.HEADER_MAGIC);
+
+        byte[] buf = new byte[2];
+        encodeStreamFlags(buf, 0);
+        out.write(buf);
+
+        EncoderUtil.writeCRC32(out, buf);
+    }
+
+    private void encodeStreamFooter() throws IOException {
+        byte[] buf = new byte[6];
+        long backwardSize = index.getIndexSize() / 4 - 1;
+        for (int i = 0; i < 4; ++i)
+            buf[i] = (byte)(backwardSize >>> (i * 8));
+
+        encodeStreamFlags(buf, 4);
+
+        EncoderUtil.writeCRC32(out, buf);
+        out.write(buf);
+        out.write(XZ.FOOTER_MAGIC);
+    }
+}
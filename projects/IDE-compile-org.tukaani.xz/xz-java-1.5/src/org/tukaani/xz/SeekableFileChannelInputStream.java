@@ -0,0 +1,202 @@
+/*
+ * SeekableFileChannelInputStream
+ *
+ * This file has been put into the public domain.
+ * You can do whatever you want with this file.
+ */
+
+package org.tukaani.xz;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Wraps a {@link java.nio.channels.FileChannel FileChannel}
+ * in a SeekableInputStream.
+ * <p>
+ * Reads go to the channel at an explicit position, so
+ * {@link #read(long, byte[], int, int)} can be called from several
+ * threads at the same time, for example by the decoder threads of
+ * {@link SeekableXZInputStream}. The position of the channel itself
+ * is neither used nor changed.
+ * <p>
+ * Optionally the whole file is memory-mapped when the stream is created.
+ * Reads are then plain memory copies without system calls, which helps
+ * when small pieces are read from random positions. The size of the
+ * stream is fixed at the time of mapping. The mapping is released
+ * when the mapped buffers are garbage collected, not when the stream
+ * is closed.
+ * <p>
+ * Like all I/O on a <code>FileChannel</code>, reading without memory
+ * mapping closes the channel if the reading thread is interrupted.
+ */
+public class SeekableFileChannelInputStream extends SeekableInputStream {
+    /**
+     * Files bigger than this are mapped in several pieces because
+     * a single <code>MappedByteBuffer</code> is limited to 2&nbsp;GiB.
+     */
+    private static final int MAP_SIZE_MAX = 1 << 30;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] maps;
+    private final long mappedSize;
+    private long position = 0;
+    private final byte[] tempBuf = new byte[1];
+
+    /**
+     * Creates a new seekable input stream that reads from the specified
+     * file without memory mapping.
+     */
+    public SeekableFileChannelInputStream(File file)
+            throws FileNotFoundException {
+        channel = new RandomAccessFile(file, "r").getChannel();
+        maps = null;
+        mappedSize = -1;
+    }
+
+    /**
+     * Creates a new seekable input stream from an existing
+     * <code>FileChannel</code> without memory mapping.
+     */
+    public SeekableFileChannelInputStream(FileChannel channel) {
+        this.channel = channel;
+        maps = null;
+        mappedSize = -1;
+    }
+
+    /**
+     * Creates a new seekable input stream from an existing
+     * <code>FileChannel</code>, optionally memory-mapping the whole file.
+     *
+     * @param       channel     channel opened for reading
+     *
+     * @param       memoryMap   <code>true</code> to map the file into
+     *                          memory, <code>false</code> to read with
+     *                          positioned channel reads
+     *
+     * @throws      IOException if getting the size of the file
+     *                          or mapping it fails
+     */
+    public SeekableFileChannelInputStream(FileChannel channel,
+                                          boolean memoryMap)
+            throws IOException {
+        this.channel = channel;
+
+        if (!memoryMap) {
+            maps = null;
+            mappedSize = -1;
+            return;
+        }
+
+        mappedSize = channel.size();
+        maps = new MappedByteBuffer[
+                (int)((mappedSize + MAP_SIZE_MAX - 1) / MAP_SIZE_MAX)];
+
+        for (int i = 0; i < maps.length; ++i) {
+            long start = (long)i * MAP_SIZE_MAX;
+            maps[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                  Math.min(MAP_SIZE_MAX, mappedSize - start));
+        }
+    }
+
+    /**
+     * Gets the <code>FileChannel</code> that this stream reads from.
+     */
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Reads one byte at the current position.
+     */
+    public int read() throws IOException {
+        return read(tempBuf, 0, 1) == -1 ? -1 : (tempBuf[0] & 0xFF);
+    }
+
+    /**
+     * Reads at the current position and advances the position by
+     * the number of bytes read.
+     */
+    public int read(byte[] buf, int off, int len) throws IOException {
+        int size = read(position, buf, off, len);
+        if (size > 0)
+            position += size;
+
+        return size;
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes at the given position. This
+     * doesn't change the current position and is thread safe.
+     */
+    public int read(long pos, byte[] buf, int off, int len)
+            throws IOException {
+        if (off < 0 || len < 0 || off + len < 0 || off + len > buf.length)
+            throw new IndexOutOfBoundsException();
+
+        if (pos < 0)
+            throw new XZIOException("Negative read position: " + pos);
+
+        if (len == 0)
+            return 0;
+
+        if (maps == null)
+            return channel.read(ByteBuffer.wrap(buf, off, len), pos);
+
+        if (pos >= mappedSize)
+            return -1;
+
+        if (len > mappedSize - pos)
+            len = (int)(mappedSize - pos);
+
+        int size = 0;
+        while (size < len) {
+            // Each read uses its own view of the mapping so that
+            // concurrent reads don't disturb each other's positions.
+            ByteBuffer map = maps[(int)(pos / MAP_SIZE_MAX)].duplicate();
+            map.position((int)(pos % MAP_SIZE_MAX));
+
+            int copySize = Math.min(len - size, map.remaining());
+            map.get(buf, off + size, copySize);
+            size += copySize;
+            pos += copySize;
+        }
+
+        return size;
+    }
+
+    /**
+     * Closes the channel.
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Gets the size of the file, or the size at the time of mapping
+     * if the file is memory-mapped.
+     */
+    public long length() throws IOException {
+        return maps == null ? channel.size() : mappedSize;
+    }
+
+    public long position() throws IOException {
+        return position;
+    }
+
+    /**
+     * Sets the position of this stream. Seeking past the end of the file
+     * is allowed; reading then returns <code>-1</code>.
+     */
+    public void seek(long pos) throws IOException {
+        if (pos < 0)
+            throw new XZIOException("Negative seek position: " + pos);
+
+        position = pos;
+    }
+}
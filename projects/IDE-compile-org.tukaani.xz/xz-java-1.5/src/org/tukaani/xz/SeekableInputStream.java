@@ -78,4 +78,38 @@ public abstract class SeekableInputStream extends InputStream {
      *                          a stream-specific I/O error occurs
      */
     public abstract void seek(long pos) throws IOException;
+
+    /**
+     * Reads up to <code>len</code> bytes starting at the absolute position
+     * <code>pos</code> without changing the current position.
+     * <p>
+     * The default implementation seeks to <code>pos</code>, reads, and
+     * seeks back while holding the lock of this stream. Subclasses that
+     * can read from a given position directly should override this so
+     * that readers in different threads don't need to wait for each other.
+     *
+     * @param       pos         position to read from
+     * @param       buf         target buffer
+     * @param       off         start offset in <code>buf</code>
+     * @param       len         maximum number of bytes to read
+     *
+     * @return      number of bytes read, or <code>-1</code> if
+     *              <code>pos</code> is at or past the end of the stream
+     *
+     * @throws      IOException if <code>pos</code> is negative or if
+     *                          a stream-specific I/O error occurs
+     */
+    public int read(long pos, byte[] buf, int off, int len)
+            throws IOException {
+        synchronized (this) {
+            long oldPos = position();
+            seek(pos);
+
+            try {
+                return read(buf, off, len);
+            } finally {
+                seek(oldPos);
+            }
+        }
+    }
 }
@@ -11,6 +11,8 @@ package org.tukaani.xz;
 
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.LinkedList;
+import java.io.InputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.EOFException;
@@ -67,13 +69,56 @@ import org.tukaani.xz.index.BlockInfo;
  * also added the option <code>--block-size=SIZE</code> to the xz command
  * line tool. XZ Utils 5.1.2alpha added a partial implementation of
  * <code>--block-list=SIZES</code> which allows specifying sizes of
- * individual Blocks.
+ * individual Blocks. {@link ParallelXZOutputStream} always creates
+ * multi-Block files.
+ *
+ * <h4>Parallel and concurrent decompression</h4>
+ * <p>
+ * Since the Blocks are independent, they can be decompressed at the same
+ * time. After <code>setDecoderThreads(int)</code> has been called with
+ * a positive number, sequential reading decompresses the next Blocks ahead
+ * of time on that many worker threads. Independently of that,
+ * <code>read(long, byte[], int, int)</code> reads from an absolute
+ * position without changing the position of the stream, and it can be
+ * called from several threads at the same time; each thread decompresses
+ * the Blocks it needs. In both cases, Blocks that fit in the Block cache
+ * are decompressed completely into memory and the most recently used ones
+ * are kept for later reads. The size of the cache is limited in bytes, see
+ * {@link #setBlockCacheSize(long)}. By default it is as big as the memory
+ * usage limit, so the limit decides whether a Block is kept in memory.
+ * Blocks that don't fit are decompressed from their beginning straight into
+ * the buffer of the caller. The memory usage limit also applies to each
+ * Block decoder separately.
+ * <p>
+ * The compressed input is read with
+ * {@link SeekableInputStream#read(long, byte[], int, int)}. With
+ * {@link SeekableFileInputStream} and other streams that use the default
+ * implementation, each such read seeks and reads with <code>in</code>
+ * locked, so threads that need compressed data at the same time wait for
+ * each other. {@link SeekableFileChannelInputStream} reads at a position
+ * without locking, but an interrupted reader thread closes its channel.
  *
  * @see SeekableFileInputStream
  * @see XZInputStream
  * @see XZOutputStream
  */
 public class SeekableXZInputStream extends SeekableInputStream {
+    /**
+     * Blocks whose uncompressed size is bigger than this many bytes are
+     * never decompressed into memory, whatever the size of the Block cache.
+     * They are decompressed as a stream from their beginning on every
+     * positional read and are never decoded ahead. This is also the
+     * default size of the Block cache when there is no memory usage limit.
+     */
+    public static final int BLOCK_BUFFER_MAX = 1 << 28;
+
+    /**
+     * Minimum number of decompressed Blocks that can be kept in memory.
+     * The limit grows with the number of decoder threads so that all
+     * the Blocks being decoded ahead fit in.
+     */
+    private static final int CACHED_BLOCKS_MIN = 16;
+
     /**
      * The input stream containing XZ compressed data.
      */
@@ -131,12 +176,6 @@ public class SeekableXZInputStream extends SeekableInputStream {
      */
     private final BlockInfo queriedBlockInfo;
 
-    /**
-     * Integrity Check in the current XZ Stream. The constructor leaves
-     * this to point to the Check of the first Stream.
-     */
-    private Check check;
-
     /**
      * Decoder of the current XZ Block, if any.
      */
@@ -169,6 +208,119 @@ public class SeekableXZInputStream extends SeekableInputStream {
      */
     private IOException exception = null;
 
+    /**
+     * Lock protecting <code>cachedBlocks</code>, <code>decodeQueue</code>,
+     * <code>decoders</code> and the state of every DecodedBlock.
+     */
+    private final Object blockLock = new Object();
+
+    /**
+     * Maximum total uncompressed size of the Blocks kept in memory.
+     */
+    private volatile long blockCacheSize;
+
+    /**
+     * Decompressed Blocks, the most recently used one first. There are
+     * only a few of them, so the array is searched linearly.
+     */
+    private DecodedBlock[] cachedBlocks = new DecodedBlock[CACHED_BLOCKS_MIN];
+
+    /**
+     * Number of Blocks in <code>cachedBlocks</code>.
+     */
+    private int cachedBlockCount = 0;
+
+    /**
+     * Total uncompressed size of the Blocks in <code>cachedBlocks</code>.
+     */
+    private long cachedBytes = 0;
+
+    /**
+     * Blocks waiting to be decompressed ahead by the decoder threads.
+     */
+    private final LinkedList decodeQueue = new LinkedList();
+
+    /**
+     * Threads decompressing Blocks ahead of sequential reads.
+     */
+    private Thread[] decoders = new Thread[0];
+
+    /**
+     * A Block that is being or has been decompressed into memory.
+     */
+    private static class DecodedBlock {
+        final BlockInfo info;
+        byte[] data = null;
+        Throwable error = null;
+        boolean started = false;
+        boolean done = false;
+
+        DecodedBlock(BlockInfo info) {
+            this.info = info;
+        }
+    }
+
+    /**
+     * Reads the compressed data of one Block. Every read seeks
+     * <code>in</code> while holding its lock, so any number of these
+     * can be used from different threads at the same time.
+     */
+    private class BlockDataInputStream extends InputStream {
+        private final byte[] buf = new byte[8192];
+        private int bufPos = 0;
+        private int bufSize = 0;
+        private long pos;
+        private final long end;
+
+        BlockDataInputStream(BlockInfo info) {
+            pos = info.compressedOffset;
+            end = pos + ((info.unpaddedSize + 3) & ~3);
+        }
+
+        public int read() throws IOException {
+            if (bufPos == bufSize && !fill())
+                return -1;
+
+            return buf[bufPos++] & 0xFF;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+
+            if (bufPos == bufSize) {
+                if (len >= buf.length) {
+                    int size = (int)Math.min(len, end - pos);
+                    if (size <= 0)
+                        return -1;
+
+                    size = readAt(pos, b, off, size);
+                    pos += size;
+                    return size;
+                }
+
+                if (!fill())
+                    return -1;
+            }
+
+            int size = Math.min(len, bufSize - bufPos);
+            System.arraycopy(buf, bufPos, b, off, size);
+            bufPos += size;
+            return size;
+        }
+
+        private boolean fill() throws IOException {
+            int size = (int)Math.min(buf.length, end - pos);
+            if (size <= 0)
+                return false;
+
+            bufSize = readAt(pos, buf, 0, size);
+            bufPos = 0;
+            pos += bufSize;
+            return true;
+        }
+    }
+
     /**
      * Temporary buffer for read(). This avoids reallocating memory
      * on every read() call.
@@ -289,9 +441,8 @@ public class SeekableXZInputStream extends SeekableInputStream {
                 throw new CorruptedInputException(
                         "Backward Size in XZ Stream Footer is too big");
 
-            // Check that the Check ID is supported. Store it in case this
-            // is the first Stream in the file.
-            check = Check.getInstance(streamFooter.checkType);
+            // Check that the Check ID is supported.
+            Check.getInstance(streamFooter.checkType);
 
             // Remember which Check IDs have been seen.
             checkTypes |= 1 << streamFooter.checkType;
@@ -367,6 +518,7 @@ public class SeekableXZInputStream extends SeekableInputStream {
 
         // Save it now that indexMemoryUsage has been substracted from it.
         this.memoryLimit = memoryLimit;
+        blockCacheSize = limitBlockCacheSize(BLOCK_BUFFER_MAX);
 
         // Store the relative offsets of the Streams. This way we don't
         // need to recalculate them in this class when seeking; the
@@ -597,6 +749,12 @@ public class SeekableXZInputStream extends SeekableInputStream {
         if (exception != null)
             throw exception;
 
+        if (decoders.length > 0) {
+            int size = readAhead(buf, off, len);
+            if (size != 0)
+                return size;
+        }
+
         int size = 0;
 
         try {
@@ -671,6 +829,8 @@ public class SeekableXZInputStream extends SeekableInputStream {
      */
     public void close() throws IOException {
         if (in != null) {
+            setDecoderThreads(0);
+
             try {
                 in.close();
             } finally {
@@ -794,14 +954,8 @@ public class SeekableXZInputStream extends SeekableInputStream {
         // yet. (Decoding of a Block won't be started until at least one
         // byte will also be read from it.)
         if (!(curPos > curBlockInfo.uncompressedOffset && curPos <= seekPos)) {
-            // Seek to the beginning of the Block.
-            in.seek(curBlockInfo.compressedOffset);
-
-            // Since it is possible that this Block is from a different
-            // Stream than the previous Block, initialize a new Check.
-            check = Check.getInstance(curBlockInfo.getCheckType());
-
-            // Create a new Block decoder.
+            // Create a new Block decoder. It reads from the beginning of
+            // the Block.
             initBlockDecoder();
             curPos = curBlockInfo.uncompressedOffset;
         }
@@ -871,16 +1025,499 @@ public class SeekableXZInputStream extends SeekableInputStream {
     }
 
     /**
-     * Initializes a new BlockInputStream. This is a helper function for
-     * <code>seek()</code>.
+     * Reads up to <code>len</code> bytes of uncompressed data starting at
+     * the absolute uncompressed position <code>pos</code>. This doesn't
+     * change the position of the stream and doesn't affect sequential
+     * reading, so this can be called from several threads at the same time
+     * and also while another thread reads sequentially.
+     * <p>
+     * Less than <code>len</code> bytes are read only when the end of
+     * the uncompressed data is reached or when an error is detected after
+     * some bytes have already been read. Unlike with sequential reading,
+     * errors aren't remembered; the next call simply tries again.
+     *
+     * @param       pos         uncompressed position to read from
+     * @param       buf         target buffer for uncompressed data
+     * @param       off         start offset in <code>buf</code>
+     * @param       len         maximum number of uncompressed bytes to read
+     *
+     * @return      number of bytes read, or <code>-1</code> if
+     *              <code>pos</code> is at or past the end of the file
+     *
+     * @throws      CorruptedInputException
+     * @throws      UnsupportedOptionsException
+     * @throws      MemoryLimitException
+     *
+     * @throws      XZIOException if <code>pos</code> is negative or
+     *                            the stream has been closed
+     *
+     * @throws      IOException may be thrown by <code>in</code>
      */
-    private void initBlockDecoder() throws IOException {
+    public int read(long pos, byte[] buf, int off, int len)
+            throws IOException {
+        if (off < 0 || len < 0 || off + len < 0 || off + len > buf.length)
+            throw new IndexOutOfBoundsException();
+
+        if (in == null)
+            throw new XZIOException("Stream closed");
+
+        if (pos < 0)
+            throw new XZIOException("Negative read position: " + pos);
+
+        if (pos >= uncompressedSize)
+            return -1;
+
+        BlockInfo info = new BlockInfo(
+                (IndexDecoder)streams.get(streams.size() - 1));
+        int size = 0;
+
         try {
-            // Set it to null first so that GC can collect it if memory
-            // runs tight when initializing a new BlockInputStream.
+            while (len > 0 && pos < uncompressedSize) {
+                locateBlockByPos(info, pos);
+
+                int ret;
+                if (isBuffered(info)) {
+                    DecodedBlock block = getDecodedBlock(info);
+                    int blockPos = (int)(pos - info.uncompressedOffset);
+                    ret = Math.min(len, block.data.length - blockPos);
+                    System.arraycopy(block.data, blockPos, buf, off, ret);
+                } else {
+                    ret = readUnbuffered(info, pos, buf, off, len);
+                }
+
+                pos += ret;
+                off += ret;
+                len -= ret;
+                size += ret;
+            }
+        } catch (IOException e) {
+            if (e instanceof EOFException)
+                e = new CorruptedInputException();
+
+            if (size == 0)
+                throw e;
+        }
+
+        return size;
+    }
+
+    /**
+     * Sets the number of threads that decompress Blocks ahead of
+     * sequential reads. With zero threads, which is the default, sequential
+     * reading decompresses on the calling thread only.
+     * <p>
+     * The threads are daemon threads. They are stopped by
+     * <code>close()</code> or by calling this with zero.
+     *
+     * @param       threads     number of decoder threads, or zero
+     *
+     * @throws      XZIOException if the stream has been closed
+     */
+    public void setDecoderThreads(int threads) throws IOException {
+        if (threads < 0)
+            throw new IllegalArgumentException(
+                    "Number of threads must not be negative: " + threads);
+
+        synchronized (blockLock) {
+            if (in == null)
+                throw new XZIOException("Stream closed");
+
+            decoders = new Thread[threads];
+            decodeQueue.clear();
+            blockLock.notifyAll();
+
+            int cachedBlocksMax = Math.max(CACHED_BLOCKS_MIN, 2 * threads + 1);
+            if (cachedBlocks.length < cachedBlocksMax) {
+                DecodedBlock[] grown = new DecodedBlock[cachedBlocksMax];
+                System.arraycopy(cachedBlocks, 0, grown, 0, cachedBlockCount);
+                cachedBlocks = grown;
+            }
+
+            for (int i = 0; i < threads; ++i) {
+                final Thread[] generation = decoders;
+                decoders[i] = new Thread("XZ decoder " + i) {
+                    public void run() {
+                        decodeAhead(generation);
+                    }
+                };
+                decoders[i].setDaemon(true);
+                decoders[i].start();
+            }
+        }
+    }
+
+    /**
+     * Sets the maximum total uncompressed size of the Blocks that are kept
+     * in memory for positional reads and for decompressing ahead. Blocks
+     * bigger than this are never kept in memory; they are decompressed from
+     * their beginning straight into the buffer of the caller. Zero disables
+     * the cache.
+     * <p>
+     * If a memory usage limit was given to the constructor, the cache never
+     * grows bigger than that limit, and by default it is as big as the
+     * limit. Without a limit the default is {@link #BLOCK_BUFFER_MAX} bytes.
+     * Blocks that concurrent positional reads are still decompressing use
+     * memory on top of this until they are finished.
+     *
+     * @param       bytes       maximum size of the Block cache in bytes
+     */
+    public void setBlockCacheSize(long bytes) {
+        if (bytes < 0)
+            throw new IllegalArgumentException(
+                    "Block cache size must not be negative: " + bytes);
+
+        synchronized (blockLock) {
+            blockCacheSize = limitBlockCacheSize(bytes);
+            evictBlocks(0, -1, -1);
+        }
+    }
+
+    /**
+     * Gets the maximum total uncompressed size of the Blocks that are
+     * kept in memory.
+     */
+    public long getBlockCacheSize() {
+        return blockCacheSize;
+    }
+
+    private long limitBlockCacheSize(long bytes) {
+        return memoryLimit < 0 ? bytes
+                               : Math.min(bytes, (long)memoryLimit << 10);
+    }
+
+    /**
+     * Tells if the given Block is small enough to be decompressed into
+     * the Block cache.
+     */
+    private boolean isBuffered(BlockInfo info) {
+        return info.uncompressedSize <= BLOCK_BUFFER_MAX
+                && info.uncompressedSize <= blockCacheSize;
+    }
+
+    /**
+     * Finds a Block in the cache and marks it as the most recently used one.
+     */
+    private DecodedBlock findCachedBlock(int blockNumber) {
+        for (int i = 0; i < cachedBlockCount; ++i) {
+            DecodedBlock block = cachedBlocks[i];
+            if (block.info.blockNumber == blockNumber) {
+                System.arraycopy(cachedBlocks, 0, cachedBlocks, 1, i);
+                cachedBlocks[0] = block;
+                return block;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Adds a Block to the cache as the most recently used one.
+     */
+    private void cacheBlock(DecodedBlock block) {
+        if (cachedBlockCount == cachedBlocks.length)
+            removeCachedBlock(cachedBlockCount - 1);
+
+        System.arraycopy(cachedBlocks, 0, cachedBlocks, 1, cachedBlockCount);
+        cachedBlocks[0] = block;
+        ++cachedBlockCount;
+        cachedBytes += block.info.uncompressedSize;
+    }
+
+    /**
+     * Removes a Block from the cache. If no thread has started to
+     * decompress it yet, it is taken off the decode queue too.
+     */
+    private void removeCachedBlock(int index) {
+        DecodedBlock block = cachedBlocks[index];
+        --cachedBlockCount;
+        System.arraycopy(cachedBlocks, index + 1, cachedBlocks, index,
+                         cachedBlockCount - index);
+        cachedBlocks[cachedBlockCount] = null;
+        cachedBytes -= block.info.uncompressedSize;
+
+        if (!block.started)
+            decodeQueue.remove(block);
+    }
+
+    /**
+     * Drops the least recently used Blocks until <code>needed</code> more
+     * bytes fit in the cache. Blocks numbered from <code>keepFirst</code>
+     * to <code>keepLast</code> are never dropped.
+     *
+     * @return      <code>true</code> if <code>needed</code> more bytes
+     *              fit in the cache
+     */
+    private boolean evictBlocks(long needed, int keepFirst, int keepLast) {
+        for (int i = cachedBlockCount - 1;
+                i >= 0 && cachedBytes + needed > blockCacheSize; --i) {
+            int blockNumber = cachedBlocks[i].info.blockNumber;
+            if (blockNumber < keepFirst || blockNumber > keepLast)
+                removeCachedBlock(i);
+        }
+
+        return cachedBytes + needed <= blockCacheSize;
+    }
+
+    /**
+     * Serves a sequential read from Blocks decompressed into memory and
+     * queues the following Blocks for the decoder threads. Returns
+     * <code>0</code> without changing anything if the Block at the current
+     * position doesn't fit in the Block cache, or if the end has been
+     * reached; <code>read</code> then continues as usual.
+     */
+    private int readAhead(byte[] buf, int off, int len) throws IOException {
+        long pos = seekNeeded ? seekPos : curPos;
+        if (pos >= uncompressedSize)
+            return 0;
+
+        BlockInfo info = new BlockInfo(
+                (IndexDecoder)streams.get(streams.size() - 1));
+        locateBlockByPos(info, pos);
+        if (!isBuffered(info))
+            return 0;
+
+        int size = 0;
+
+        try {
+            while (len > 0 && pos < uncompressedSize) {
+                locateBlockByPos(info, pos);
+                if (!isBuffered(info))
+                    break;
+
+                queueAhead(info.blockNumber);
+
+                DecodedBlock block = getDecodedBlock(info);
+                int blockPos = (int)(pos - info.uncompressedOffset);
+                int ret = Math.min(len, block.data.length - blockPos);
+                System.arraycopy(block.data, blockPos, buf, off, ret);
+
+                pos += ret;
+                off += ret;
+                len -= ret;
+                size += ret;
+            }
+        } catch (IOException e) {
+            if (e instanceof EOFException)
+                e = new CorruptedInputException();
+
+            exception = e;
+            if (size == 0)
+                throw e;
+        } finally {
+            // Let the ordinary code path continue from here if needed.
             blockDecoder = null;
-            blockDecoder = new BlockInputStream(in, check, memoryLimit,
-                    curBlockInfo.unpaddedSize, curBlockInfo.uncompressedSize);
+            curPos = pos;
+            seekPos = pos;
+            seekNeeded = true;
+        }
+
+        return size;
+    }
+
+    /**
+     * Queues the Blocks following the given Block for the decoder threads,
+     * as many as fit in the Block cache without dropping the given Block
+     * or the ones already queued after it.
+     */
+    private void queueAhead(int blockNumber) {
+        synchronized (blockLock) {
+            int last = Math.min(blockCount - 1, blockNumber + decoders.length);
+            for (int i = blockNumber + 1; i <= last; ++i) {
+                if (findCachedBlock(i) != null)
+                    continue;
+
+                BlockInfo info = new BlockInfo(
+                        (IndexDecoder)streams.get(streams.size() - 1));
+                locateBlockByNumber(info, i);
+                if (!isBuffered(info)
+                        || !evictBlocks(info.uncompressedSize,
+                                        blockNumber, last))
+                    break;
+
+                DecodedBlock block = new DecodedBlock(info);
+                cacheBlock(block);
+                decodeQueue.addLast(block);
+            }
+
+            blockLock.notifyAll();
+        }
+    }
+
+    /**
+     * Main loop of a decoder thread. The thread stops once
+     * <code>decoders</code> no longer refers to its generation.
+     */
+    private void decodeAhead(Thread[] generation) {
+        while (true) {
+            DecodedBlock block;
+            synchronized (blockLock) {
+                try {
+                    while (decodeQueue.isEmpty() && decoders == generation)
+                        blockLock.wait();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                if (decoders != generation)
+                    return;
+
+                block = (DecodedBlock)decodeQueue.removeFirst();
+                if (block.started)
+                    continue;
+
+                block.started = true;
+            }
+
+            decode(block);
+        }
+    }
+
+    /**
+     * Gets the given Block decompressed into memory. If no other thread
+     * has started to decompress it, it is decompressed on this thread.
+     * The Block is left out of the cache if the cache has been made
+     * smaller than the Block in the meantime.
+     */
+    private DecodedBlock getDecodedBlock(BlockInfo info) throws IOException {
+        DecodedBlock block;
+        boolean decodeHere;
+
+        synchronized (blockLock) {
+            block = findCachedBlock(info.blockNumber);
+            if (block == null) {
+                BlockInfo copy = new BlockInfo(
+                        (IndexDecoder)streams.get(streams.size() - 1));
+                locateBlockByNumber(copy, info.blockNumber);
+                block = new DecodedBlock(copy);
+                if (evictBlocks(copy.uncompressedSize, -1, -1))
+                    cacheBlock(block);
+            }
+
+            decodeHere = !block.started;
+            block.started = true;
+        }
+
+        if (decodeHere) {
+            decode(block);
+        } else {
+            synchronized (blockLock) {
+                try {
+                    while (!block.done)
+                        blockLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new XZIOException(
+                            "Interrupted while waiting for an XZ Block");
+                }
+            }
+        }
+
+        if (block.error instanceof IOException)
+            throw (IOException)block.error;
+
+        if (block.error instanceof RuntimeException)
+            throw (RuntimeException)block.error;
+
+        if (block.error != null)
+            throw (Error)block.error;
+
+        return block;
+    }
+
+    /**
+     * Decompresses a Block into memory and wakes up the threads waiting
+     * for it. A failed Block is dropped from the cache so that it will be
+     * retried on the next read.
+     */
+    private void decode(DecodedBlock block) {
+        byte[] data = null;
+        Throwable error = null;
+
+        try {
+            BlockInputStream decoder = newBlockDecoder(block.info);
+            data = new byte[(int)block.info.uncompressedSize];
+            new DataInputStream(decoder).readFully(data);
+
+            // Reading past the end verifies the Block Padding and Check.
+            if (decoder.read() != -1)
+                throw new CorruptedInputException();
+        } catch (Throwable t) {
+            data = null;
+            error = t;
+        }
+
+        synchronized (blockLock) {
+            block.data = data;
+            block.error = error;
+            block.done = true;
+
+            if (error != null) {
+                for (int i = 0; i < cachedBlockCount; ++i) {
+                    if (cachedBlocks[i] == block) {
+                        removeCachedBlock(i);
+                        break;
+                    }
+                }
+            }
+
+            blockLock.notifyAll();
+        }
+    }
+
+    /**
+     * Reads from a Block that is too big to be decompressed into memory
+     * by decompressing it from its beginning.
+     */
+    private int readUnbuffered(BlockInfo info, long pos,
+                               byte[] buf, int off, int len)
+            throws IOException {
+        BlockInputStream decoder = newBlockDecoder(info);
+
+        long skipAmount = pos - info.uncompressedOffset;
+        if (decoder.skip(skipAmount) != skipAmount)
+            throw new CorruptedInputException();
+
+        len = (int)Math.min(len,
+                info.uncompressedOffset + info.uncompressedSize - pos);
+        int size = 0;
+        while (size < len) {
+            int ret = decoder.read(buf, off + size, len - size);
+            if (ret == -1)
+                throw new CorruptedInputException();
+
+            size += ret;
+        }
+
+        return size;
+    }
+
+    /**
+     * Reads compressed data from an absolute position in <code>in</code>.
+     */
+    private int readAt(long pos, byte[] buf, int off, int len)
+            throws IOException {
+        SeekableInputStream source = in;
+        if (source == null)
+            throw new XZIOException("Stream closed");
+
+        int size = source.read(pos, buf, off, len);
+        if (size <= 0)
+            throw new EOFException();
+
+        return size;
+    }
+
+    /**
+     * Creates a decoder for the given Block. The decoder reads
+     * the compressed data through its own
+     * <code>BlockDataInputStream</code>.
+     */
+    private BlockInputStream newBlockDecoder(BlockInfo info)
+            throws IOException {
+        try {
+            return new BlockInputStream(new BlockDataInputStream(info),
+                    Check.getInstance(info.getCheckType()), memoryLimit,
+                    info.unpaddedSize, info.uncompressedSize);
         } catch (MemoryLimitException e) {
             // BlockInputStream doesn't know how much memory we had
             // already needed so we need to recreate the exception.
@@ -893,4 +1530,15 @@ public class SeekableXZInputStream extends SeekableInputStream {
             throw new CorruptedInputException();
         }
     }
+
+    /**
+     * Initializes a new BlockInputStream. This is a helper function for
+     * <code>seek()</code>.
+     */
+    private void initBlockDecoder() throws IOException {
+        // Set it to null first so that GC can collect it if memory
+        // runs tight when initializing a new BlockInputStream.
+        blockDecoder = null;
+        blockDecoder = newBlockDecoder(curBlockInfo);
+    }
 }
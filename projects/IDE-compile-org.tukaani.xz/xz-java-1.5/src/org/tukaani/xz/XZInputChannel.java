@@ -0,0 +1,186 @@
+/*
+ * XZInputChannel
+ *
+ * This file has been put into the public domain.
+ * You can do whatever you want with this file.
+ */
+
+package org.tukaani.xz;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Decompresses a .xz file through a channel.
+ * <p>
+ * This is a <code>ReadableByteChannel</code> front end for
+ * {@link XZInputStream} or for any {@link SeekableXZInputStream}.
+ * The compressed data is read from another
+ * <code>ReadableByteChannel</code> and the uncompressed data is stored
+ * into <code>ByteBuffer</code>s.
+ * <p>
+ * Buffers backed by an accessible array are filled directly by
+ * the decoder without copying. Direct buffers are filled through a small
+ * internal array because the decoder works on byte arrays.
+ * <p>
+ * The underlying channel must be in blocking mode. The compressed input
+ * is read in big chunks because the decoder itself does many small reads.
+ *
+ * <h4>Typical use case</h4>
+ * <p><blockquote><pre>
+ * FileChannel infile = new FileInputStream("foo.xz").getChannel();
+ * XZInputChannel inxz = new XZInputChannel(infile);
+ * while (inxz.read(buffer) != -1) {
+ *     buffer.flip();
+ *     target.write(buffer);
+ *     buffer.compact();
+ * }
+ * </pre></blockquote>
+ */
+public class XZInputChannel implements ReadableByteChannel {
+    private static final int BUFFER_SIZE = 64 << 10;
+    private static final int COPY_SIZE = 8192;
+
+    private final InputStream decoder;
+    private byte[] copyBuf = null;
+    private boolean open = true;
+
+    /**
+     * Creates a new XZ decompressor without a memory usage limit.
+     *
+     * @param       in          channel from which the .xz file
+     *                          is read
+     *
+     * @throws      XZFormatException
+     *                          input is not in the XZ format
+     *
+     * @throws      CorruptedInputException
+     *                          XZ header CRC32 doesn't match
+     *
+     * @throws      UnsupportedOptionsException
+     *                          XZ header is valid but specifies options
+     *                          not supported by this implementation
+     *
+     * @throws      IOException may be thrown by <code>in</code>
+     */
+    public XZInputChannel(ReadableByteChannel in) throws IOException {
+        this(in, -1);
+    }
+
+    /**
+     * Creates a new XZ decompressor with an optional memory usage limit.
+     * See {@link XZInputStream#XZInputStream(InputStream, int)}.
+     *
+     * @param       in          channel from which the .xz file
+     *                          is read
+     *
+     * @param       memoryLimit memory usage limit in kibibytes (KiB)
+     *                          or <code>-1</code> to impose no
+     *                          memory usage limit
+     *
+     * @throws      XZFormatException
+     *                          input is not in the XZ format
+     *
+     * @throws      CorruptedInputException
+     *                          XZ header CRC32 doesn't match
+     *
+     * @throws      UnsupportedOptionsException
+     *                          XZ header is valid but specifies options
+     *                          not supported by this implementation
+     *
+     * @throws      IOException may be thrown by <code>in</code>
+     */
+    public XZInputChannel(ReadableByteChannel in, int memoryLimit)
+            throws IOException {
+        if (in == null)
+            throw new NullPointerException();
+
+        decoder = new XZInputStream(new BufferedInputStream(
+                Channels.newInputStream(in), BUFFER_SIZE), memoryLimit);
+    }
+
+    /**
+     * Creates a channel that reads the uncompressed data from the current
+     * position of <code>decoder</code> onwards. Closing the channel
+     * closes <code>decoder</code>.
+     * <p>
+     * Together with {@link SeekableFileChannelInputStream} this gives
+     * channel access to random positions in a .xz file.
+     *
+     * @param       decoder     seekable decompressor to read from
+     */
+    public XZInputChannel(SeekableXZInputStream decoder) {
+        if (decoder == null)
+            throw new NullPointerException();
+
+        this.decoder = decoder;
+    }
+
+    /**
+     * Decompresses into the remaining space of <code>dst</code>.
+     * <p>
+     * This reads at least one byte unless <code>dst</code> has no space
+     * left or the end of the uncompressed data has been reached. It may
+     * fill less than the whole buffer.
+     *
+     * @return      number of bytes stored into <code>dst</code>, or
+     *              <code>-1</code> if the end of the uncompressed data
+     *              has been reached
+     *
+     * @throws      ClosedChannelException if this channel has been closed
+     *
+     * @throws      CorruptedInputException
+     * @throws      UnsupportedOptionsException
+     * @throws      MemoryLimitException
+     *
+     * @throws      IOException may be thrown by the underlying channel
+     */
+    public int read(ByteBuffer dst) throws IOException {
+        if (!open)
+            throw new ClosedChannelException();
+
+        int len = dst.remaining();
+        if (len == 0)
+            return 0;
+
+        if (dst.hasArray()) {
+            int size = decoder.read(dst.array(),
+                                    dst.arrayOffset() + dst.position(), len);
+            if (size > 0)
+                dst.position(dst.position() + size);
+
+            return size;
+        }
+
+        if (copyBuf == null)
+            copyBuf = new byte[COPY_SIZE];
+
+        int size = decoder.read(copyBuf, 0, Math.min(len, copyBuf.length));
+        if (size > 0)
+            dst.put(copyBuf, 0, size);
+
+        return size;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Closes the decompressor and the underlying channel.
+     * If the channel has already been closed, this does nothing.
+     *
+     * @throws      IOException may be thrown by the underlying channel
+     */
+    public void close() throws IOException {
+        if (open) {
+            open = false;
+            decoder.close();
+        }
+    }
+}
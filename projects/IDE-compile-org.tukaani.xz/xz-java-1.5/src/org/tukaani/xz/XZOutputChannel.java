@@ -0,0 +1,222 @@
+/*
+ * XZOutputChannel
+ *
+ * This file has been put into the public domain.
+ * You can do whatever you want with this file.
+ */
+
+package org.tukaani.xz;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Compresses into the .xz file format through a channel.
+ * <p>
+ * This is a <code>WritableByteChannel</code> front end for
+ * {@link XZOutputStream} and {@link ParallelXZOutputStream}. The
+ * uncompressed data is taken from <code>ByteBuffer</code>s and the
+ * compressed data is written to another <code>WritableByteChannel</code>,
+ * for example a <code>FileChannel</code> or a <code>SocketChannel</code>.
+ * <p>
+ * Buffers backed by an accessible array are compressed directly from
+ * the array without copying. Direct buffers are copied into a small
+ * internal array first because the encoder works on byte arrays.
+ * <p>
+ * The underlying channel must be in blocking mode. Small writes to it
+ * are combined in an internal buffer, so the channel sees few large
+ * writes instead of many tiny ones.
+ *
+ * <h4>Typical use case</h4>
+ * <p><blockquote><pre>
+ * FileChannel outfile = new FileOutputStream("foo.xz").getChannel();
+ * XZOutputChannel outxz = new XZOutputChannel(outfile, new LZMA2Options());
+ * while (source.read(buffer) != -1) {
+ *     buffer.flip();
+ *     outxz.write(buffer);
+ *     buffer.clear();
+ * }
+ * outxz.close();
+ * </pre></blockquote>
+ */
+public class XZOutputChannel implements WritableByteChannel {
+    private static final int BUFFER_SIZE = 64 << 10;
+    private static final int COPY_SIZE = 8192;
+
+    private final BufferedOutputStream out;
+    private final FinishableOutputStream encoder;
+    private byte[] copyBuf = null;
+    private boolean open = true;
+
+    /**
+     * Creates a new XZ compressor using one filter and CRC64 as
+     * the integrity check.
+     *
+     * @param       out         channel to which the compressed data
+     *                          will be written
+     *
+     * @param       filterOptions
+     *                          filter options to use
+     *
+     * @throws      UnsupportedOptionsException
+     *                          invalid filter chain
+     *
+     * @throws      IOException may be thrown from <code>out</code>
+     */
+    public XZOutputChannel(WritableByteChannel out,
+                           FilterOptions filterOptions) throws IOException {
+        this(out, new FilterOptions[] { filterOptions }, XZ.CHECK_CRC64);
+    }
+
+    /**
+     * Creates a new XZ compressor using 1-4 filters and the specified
+     * integrity check type.
+     *
+     * @param       out         channel to which the compressed data
+     *                          will be written
+     *
+     * @param       filterOptions
+     *                          array of filter options to use
+     *
+     * @param       checkType   type of the integrity check,
+     *                          for example XZ.CHECK_CRC64
+     *
+     * @throws      UnsupportedOptionsException
+     *                          invalid filter chain
+     *
+     * @throws      IOException may be thrown from <code>out</code>
+     */
+    public XZOutputChannel(WritableByteChannel out,
+                           FilterOptions[] filterOptions, int checkType)
+            throws IOException {
+        this.out = newOutputStream(out);
+        encoder = new XZOutputStream(this.out, filterOptions, checkType);
+    }
+
+    /**
+     * Creates a new XZ compressor that compresses XZ Blocks in
+     * multiple threads. See {@link ParallelXZOutputStream}.
+     *
+     * @param       out         channel to which the compressed data
+     *                          will be written
+     *
+     * @param       filterOptions
+     *                          array of filter options to use
+     *
+     * @param       checkType   type of the integrity check,
+     *                          for example XZ.CHECK_CRC64
+     *
+     * @param       threads     number of compression threads
+     *
+     * @throws      UnsupportedOptionsException
+     *                          invalid filter chain
+     *
+     * @throws      IOException may be thrown from <code>out</code>
+     */
+    public XZOutputChannel(WritableByteChannel out,
+                           FilterOptions[] filterOptions, int checkType,
+                           int threads) throws IOException {
+        this.out = newOutputStream(out);
+        encoder = new ParallelXZOutputStream(this.out, filterOptions,
+                                             checkType, threads);
+    }
+
+    private static BufferedOutputStream newOutputStream(
+            WritableByteChannel out) {
+        if (out == null)
+            throw new NullPointerException();
+
+        return new BufferedOutputStream(Channels.newOutputStream(out),
+                                        BUFFER_SIZE);
+    }
+
+    /**
+     * Compresses all the remaining bytes of <code>src</code>.
+     *
+     * @return      number of bytes consumed from <code>src</code>,
+     *              which is always <code>src.remaining()</code>
+     *
+     * @throws      ClosedChannelException if this channel has been closed
+     *
+     * @throws      XZIOException if the stream has been finished
+     *
+     * @throws      IOException may be thrown by the underlying channel
+     */
+    public int write(ByteBuffer src) throws IOException {
+        if (!open)
+            throw new ClosedChannelException();
+
+        int len = src.remaining();
+
+        if (src.hasArray()) {
+            encoder.write(src.array(), src.arrayOffset() + src.position(),
+                          len);
+            src.position(src.limit());
+            return len;
+        }
+
+        if (copyBuf == null)
+            copyBuf = new byte[COPY_SIZE];
+
+        while (src.hasRemaining()) {
+            int size = Math.min(src.remaining(), copyBuf.length);
+            src.get(copyBuf, 0, size);
+            encoder.write(copyBuf, 0, size);
+        }
+
+        return len;
+    }
+
+    /**
+     * Flushes the encoder and writes all the pending output to
+     * the underlying channel. See {@link XZOutputStream#flush()}.
+     *
+     * @throws      ClosedChannelException if this channel has been closed
+     *
+     * @throws      IOException may be thrown by the underlying channel
+     */
+    public void flush() throws IOException {
+        if (!open)
+            throw new ClosedChannelException();
+
+        encoder.flush();
+        out.flush();
+    }
+
+    /**
+     * Finishes compression without closing the underlying channel.
+     * No more data can be written after finishing.
+     *
+     * @throws      ClosedChannelException if this channel has been closed
+     *
+     * @throws      IOException may be thrown by the underlying channel
+     */
+    public void finish() throws IOException {
+        if (!open)
+            throw new ClosedChannelException();
+
+        encoder.finish();
+        out.flush();
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Finishes compression and closes the underlying channel.
+     * If the channel has already been closed, this does nothing.
+     *
+     * @throws      IOException may be thrown by the underlying channel
+     */
+    public void close() throws IOException {
+        if (open) {
+            open = false;
+            encoder.close();
+        }
+    }
+}
@@ -9,24 +9,37 @@
 
 package org.tukaani.xz.check;
 
+/**
+ * CRC64 using the slicing-by-8 method.
+ * <p>
+ * Eight bytes are processed per iteration with eight lookup tables.
+ * Table <code>k</code> gives the CRC of a byte that is followed by
+ * <code>k</code> zero bytes, so the table lookups of the eight bytes
+ * are independent of each other.
+ */
 public class CRC64 extends Check {
     private static final long poly = 0xC96C5795D7870F42L;
-    private static final long[] crcTable = new long[256];
+    private static final long[][] crcTable = new long[8][256];
 
     private long crc = -1;
 
     static {
-        for (int b = 0; b < crcTable.length; ++b) {
-                long r = b;
-                for (int i = 0; i < 8; ++i) {
-                        if ((r & 1) == 1)
-                                r = (r >>> 1) ^ poly;
-                        else
-                                r >>>= 1;
-                }
-
-                crcTable[b] = r;
+        for (int b = 0; b < 256; ++b) {
+            long r = b;
+            for (int i = 0; i < 8; ++i) {
+                if ((r & 1) == 1)
+                    r = (r >>> 1) ^ poly;
+                else
+                    r >>>= 1;
+            }
+
+            crcTable[0][b] = r;
         }
+
+        for (int k = 1; k < crcTable.length; ++k)
+            for (int b = 0; b < 256; ++b)
+                crcTable[k][b] = (crcTable[k - 1][b] >>> 8)
+                                 ^ crcTable[0][(int)crcTable[k - 1][b] & 0xFF];
     }
 
     public CRC64() {
@@ -35,10 +48,39 @@ public class CRC64 extends Check {
     }
 
     public void update(byte[] buf, int off, int len) {
+        final long[] t0 = crcTable[0];
+        final long[] t1 = crcTable[1];
+        final long[] t2 = crcTable[2];
+        final long[] t3 = crcTable[3];
+        final long[] t4 = crcTable[4];
+        final long[] t5 = crcTable[5];
+        final long[] t6 = crcTable[6];
+        final long[] t7 = crcTable[7];
+
+        long c = crc;
         int end = off + len;
+        int end8 = off + (len & ~7);
+
+        while (off < end8) {
+            int lo = (int)c ^ ((buf[off] & 0xFF)
+                               | (buf[off + 1] & 0xFF) << 8
+                               | (buf[off + 2] & 0xFF) << 16
+                               | (buf[off + 3] & 0xFF) << 24);
+            int hi = (int)(c >>> 32) ^ ((buf[off + 4] & 0xFF)
+                                        | (buf[off + 5] & 0xFF) << 8
+                                        | (buf[off + 6] & 0xFF) << 16
+                                        | (buf[off + 7] & 0xFF) << 24);
+            c = t7[lo & 0xFF] ^ t6[(lo >>> 8) & 0xFF]
+                ^ t5[(lo >>> 16) & 0xFF] ^ t4[lo >>> 24]
+                ^ t3[hi & 0xFF] ^ t2[(hi >>> 8) & 0xFF]
+                ^ t1[(hi >>> 16) & 0xFF] ^ t0[hi >>> 24];
+            off += 8;
+        }
 
         while (off < end)
-            crc = crcTable[(buf[off++] ^ (int)crc) & 0xFF] ^ (crc >>> 8);
+            c = t0[(buf[off++] ^ (int)c) & 0xFF] ^ (c >>> 8);
+
+        crc = c;
     }
 
     public byte[] finish() {
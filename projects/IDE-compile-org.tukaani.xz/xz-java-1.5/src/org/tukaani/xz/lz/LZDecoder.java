@@ -12,6 +12,7 @@ package org.tukaani.xz.lz;
 
 import java.io.DataInputStream;
 import java.io.IOException;
+import org.tukaani.xz.ArrayCache;
 import org.tukaani.xz.CorruptedInputException;
 
 public final class LZDecoder {
@@ -23,8 +24,12 @@ public final class LZDecoder {
     private int pendingLen = 0;
     private int pendingDist = 0;
 
-    public LZDecoder(int dictSize, byte[] presetDict) {
-        buf = new byte[dictSize];
+    public LZDecoder(int dictSize, byte[] presetDict, ArrayCache arrayCache) {
+        buf = arrayCache.getByteArray(dictSize, false);
+
+        // A reused buffer isn't zeroed, but the literal coder reads the
+        // last byte of the buffer as the previous byte at the very start.
+        buf[buf.length - 1] = 0x00;
 
         if (presetDict != null) {
             pos = Math.min(presetDict.length, dictSize);
@@ -34,6 +39,10 @@ public final class LZDecoder {
         }
     }
 
+    public void putArraysToCache(ArrayCache arrayCache) {
+        arrayCache.putArray(buf);
+    }
+
     public void reset() {
         start = 0;
         pos = 0;
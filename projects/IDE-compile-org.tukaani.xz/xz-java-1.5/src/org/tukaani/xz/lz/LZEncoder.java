@@ -12,6 +12,7 @@ package org.tukaani.xz.lz;
 
 import java.io.OutputStream;
 import java.io.IOException;
+import org.tukaani.xz.ArrayCache;
 
 public abstract class LZEncoder {
     public static final int MF_HC4 = 0x04;
@@ -113,18 +114,23 @@ public abstract class LZEncoder {
      * @param       mf          match finder ID
      *
      * @param       depthLimit  match finder search depth limit
+     *
+     * @param       arrayCache  cache from which the buffers are taken;
+     *                          they are given back with
+     *                          <code>putArraysToCache</code>
      */
     public static LZEncoder getInstance(
             int dictSize, int extraSizeBefore, int extraSizeAfter,
-            int niceLen, int matchLenMax, int mf, int depthLimit) {
+            int niceLen, int matchLenMax, int mf, int depthLimit,
+            ArrayCache arrayCache) {
         switch (mf) {
             case MF_HC4:
                 return new HC4(dictSize, extraSizeBefore, extraSizeAfter,
-                               niceLen, matchLenMax, depthLimit);
+                               niceLen, matchLenMax, depthLimit, arrayCache);
 
             case MF_BT4:
                 return new BT4(dictSize, extraSizeBefore, extraSizeAfter,
-                               niceLen, matchLenMax, depthLimit);
+                               niceLen, matchLenMax, depthLimit, arrayCache);
         }
 
         throw new IllegalArgumentException();
@@ -134,9 +140,10 @@ public abstract class LZEncoder {
      * Creates a new LZEncoder. See <code>getInstance</code>.
      */
     LZEncoder(int dictSize, int extraSizeBefore, int extraSizeAfter,
-              int niceLen, int matchLenMax) {
-        buf = new byte[getBufSize(dictSize, extraSizeBefore, extraSizeAfter,
-                                  matchLenMax)];
+              int niceLen, int matchLenMax, ArrayCache arrayCache) {
+        buf = arrayCache.getByteArray(getBufSize(dictSize, extraSizeBefore,
+                                                 extraSizeAfter, matchLenMax),
+                                      false);
 
         keepSizeBefore = extraSizeBefore + dictSize;
         keepSizeAfter = extraSizeAfter + matchLenMax;
@@ -145,6 +152,14 @@ public abstract class LZEncoder {
         this.niceLen = niceLen;
     }
 
+    /**
+     * Gives the buffers back to the cache they were taken from.
+     * The LZEncoder must not be used after calling this.
+     */
+    public void putArraysToCache(ArrayCache arrayCache) {
+        arrayCache.putArray(buf);
+    }
+
     /**
      * Sets a preset dictionary. If a preset dictionary is wanted, this
      * function must be called immediately after creating the LZEncoder
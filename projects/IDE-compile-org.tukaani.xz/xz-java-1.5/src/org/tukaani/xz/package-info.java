@@ -7,13 +7,21 @@
  * in pure Java. Features:
  * <ul>
  * <li>Full support for the .xz file format specification version 1.0.4</li>
- * <li>Single-threaded streamed compression and decompression</li>
- * <li>Single-threaded decompression with limited random access support</li>
+ * <li>Streamed compression and decompression</li>
+ * <li>Multithreaded compression into multiple Blocks
+ *     ({@link org.tukaani.xz.ParallelXZOutputStream})</li>
+ * <li>Decompression with limited random access support, where positional
+ *     reads from several threads decompress different Blocks at the same
+ *     time ({@link org.tukaani.xz.SeekableXZInputStream})</li>
  * <li>Raw streams (no .xz headers) for advanced users, including LZMA2
  *     with preset dictionary</li>
+ * <li>NIO channel front ends ({@link org.tukaani.xz.XZOutputChannel},
+ *     {@link org.tukaani.xz.XZInputChannel}) and <code>FileChannel</code>
+ *     based random access input, optionally memory-mapped
+ *     ({@link org.tukaani.xz.SeekableFileChannelInputStream})</li>
  * </ul>
  * <p>
- * Threading is planned but it is unknown when it will be implemented.
+ * Streamed decompression is single-threaded.
  * <p>
  * For the latest source code, see the
  * <a href="http://tukaani.org/xz/java.html">home page of XZ for Java</a>.
@@ -12,6 +12,7 @@ package org.tukaani.xz.rangecoder;
 
 import java.io.DataInputStream;
 import java.io.IOException;
+import org.tukaani.xz.ArrayCache;
 import org.tukaani.xz.CorruptedInputException;
 
 public final class RangeDecoderFromBuffer extends RangeDecoder {
@@ -21,8 +22,12 @@ public final class RangeDecoderFromBuffer extends RangeDecoder {
     private int pos = 0;
     private int end = 0;
 
-    public RangeDecoderFromBuffer(int inputSizeMax) {
-        buf = new byte[inputSizeMax - INIT_SIZE];
+    public RangeDecoderFromBuffer(int inputSizeMax, ArrayCache arrayCache) {
+        buf = arrayCache.getByteArray(inputSizeMax - INIT_SIZE, false);
+    }
+
+    public void putArraysToCache(ArrayCache arrayCache) {
+        arrayCache.putArray(buf);
     }
 
     public void prepareInputBuffer(DataInputStream in, int len)
@@ -12,6 +12,7 @@ package org.tukaani.xz.rangecoder;
 
 import java.io.OutputStream;
 import java.io.IOException;
+import org.tukaani.xz.ArrayCache;
 
 public final class RangeEncoder extends RangeCoder {
     private static final int MOVE_REDUCING_BITS = 4;
@@ -55,11 +56,15 @@ public final class RangeEncoder extends RangeCoder {
         }
     }
 
-    public RangeEncoder(int bufSize) {
-        buf = new byte[bufSize];
+    public RangeEncoder(int bufSize, ArrayCache arrayCache) {
+        buf = arrayCache.getByteArray(bufSize, false);
         reset();
     }
 
+    public void putArraysToCache(ArrayCache arrayCache) {
+        arrayCache.putArray(buf);
+    }
+
     public void reset() {
         low = 0;
         range = 0xFFFFFFFF;
@@ -0,0 +1,204 @@
+package project;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import utils.lists.ArrayList;
+import utils.lists.Files;
+
+final class Archive {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String SPILL_PREFIX = "archive";
+	private static final String SPILL_SUFFIX = ".tmp";
+
+	static final class Budget {
+		private final AtomicLong available;
+
+		Budget(long bytes) {
+			this.available = new AtomicLong(bytes);
+		}
+		boolean reserve(long bytes) {
+			long current;
+			do {
+				current = available.get();
+				if(current < bytes) {
+					return false;
+				}
+			} while(available.compareAndSet(current, current - bytes) == false);
+			return true;
+		}
+		void release(long bytes) {
+			available.addAndGet(bytes);
+		}
+	}
+
+	static final class Output extends OutputStream {
+		private final Budget budget;
+		private final Path spillFolder;
+		private final Path spillFile;
+		private final ContentIndex.Hasher hasher = new ContentIndex.Hasher();
+		private final MessageDigest digest = ObjectStore.newDigest();
+		private byte[] buffer = new byte[0];
+		private int count;
+		private long size;
+		private Path file;
+		private OutputStream spill;
+
+		Output(Budget budget, Path spillFolder) {
+			this.budget = budget;
+			this.spillFolder = spillFolder;
+			this.spillFile = null;
+		}
+		Output(Path file) {
+			this.budget = new Budget(0);
+			this.spillFolder = null;
+			this.spillFile = file;
+		}
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			hasher.update(b, off, len);
+			digest.update(b, off, len);
+			size += len;
+			if(spill == null && reserve(count + len) == false) {
+				spill();
+			}
+			if(spill != null) {
+				spill.write(b, off, len);
+				return;
+			}
+			System.arraycopy(b, off, buffer, count, len);
+			count += len;
+		}
+		Archive toArchive() throws IOException {
+			if(spill != null) {
+				spill.close();
+				return new Archive(null, file, size, hasher.hash(), hexDigest(), budget, 0);
+			}
+			return new Archive(buffer, null, size, hasher.hash(), hexDigest(), budget, buffer.length);
+		}
+		private String hexDigest() {
+			return ObjectStore.toHex(digest.digest());
+		}
+		void discard() throws IOException {
+			budget.release(buffer.length);
+			buffer = null;
+			if(spill != null) {
+				spill.close();
+				Files.deleteIfExists(file);
+			}
+		}
+		private boolean reserve(long needed) {
+			if(needed <= buffer.length) {
+				return true;
+			}
+			long capacity = Math.max(needed, Math.max(BUFFER_SIZE, 2L * buffer.length));
+			if(capacity > Integer.MAX_VALUE - 8 || budget.reserve(capacity - buffer.length) == false) {
+				return false;
+			}
+			buffer = Arrays.copyOf(buffer, (int) capacity);
+			return true;
+		}
+		private void spill() throws IOException {
+			if(spillFile != null) {
+				file = spillFile;
+			} else {
+				file = Files.createTempFile(spillFolder, SPILL_PREFIX, SPILL_SUFFIX);
+			}
+			FileChannel channel =
+				FileChannel.open(
+					file,
+					StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.WRITE);
+			spill = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+			spill.write(buffer, 0, count);
+			budget.release(buffer.length);
+			buffer = new byte[0];
+			count = 0;
+		}
+	}
+
+	final long size;
+	final long hash;
+	final String digest;
+	private final Budget budget;
+	private byte[] bytes;
+	private Path file;
+	private long reserved;
+
+	private Archive(byte[] bytes, Path file, long size, long hash, String digest, Budget budget, long reserved) {
+		this.bytes = bytes;
+		this.file = file;
+		this.size = size;
+		this.hash = hash;
+		this.digest = digest;
+		this.budget = budget;
+		this.reserved = reserved;
+	}
+	static int deleteSpillFiles(Path folder) throws IOException {
+		if(Files.isDirectory(folder) == false) {
+			return 0;
+		}
+		ArrayList<Path> files = Files.list(folder).filter(Archive::isSpillFile).toList();
+		for(Path file : files) {
+			Files.deleteIfExists(file);
+		}
+		return files.size();
+	}
+	private static boolean isSpillFile(Path file) {
+		String name = file.getFileName().toString();
+		return name.startsWith(SPILL_PREFIX) && name.endsWith(SPILL_SUFFIX) && Files.isRegularFile(file);
+	}
+	boolean isSpilled() {
+		return file != null;
+	}
+	synchronized void writeTo(OutputStream out) throws IOException {
+		if(bytes != null) {
+			out.write(bytes, 0, (int) size);
+			return;
+		}
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try(InputStream in = Files.newInputStream(file)) {
+			int read;
+			while((read = in.read(buffer)) > 0) {
+				out.write(buffer, 0, read);
+			}
+		}
+	}
+	synchronized void copyTo(Path target) throws IOException {
+		try(OutputStream out = Files.newOutputStream(target)) {
+			writeTo(out);
+		}
+	}
+	synchronized void moveTo(Path target) throws IOException {
+		if(file == null) {
+			copyTo(target);
+			release();
+			return;
+		}
+		Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+		file = null;
+	}
+	synchronized void release() {
+		budget.release(reserved);
+		reserved = 0;
+		bytes = null;
+		if(file != null) {
+			file.toFile().delete();
+			file = null;
+		}
+	}
+}
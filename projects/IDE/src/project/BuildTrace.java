@@ -0,0 +1,108 @@
+package project;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import utils.lists.ArrayList;
+import utils.lists.Files;
+
+public class BuildTrace {
+	public static final BuildTrace DISABLED = new BuildTrace(false);
+
+	public static class Span implements AutoCloseable {
+		private final BuildTrace trace;
+		private final String category;
+		private final String name;
+		private final long thread;
+		private final long start;
+		private final ArrayList<String> keys = new ArrayList<>();
+		private final ArrayList<Long> values = new ArrayList<>();
+		private long duration;
+
+		Span(BuildTrace trace, String category, String name) {
+			this.trace = trace;
+			this.category = category;
+			this.name = name;
+			this.thread = Thread.currentThread().getId();
+			this.start = System.nanoTime();
+		}
+		public Span add(String key, long amount) {
+			if(trace.enabled) {
+				int index = keys.indexOf(key);
+				if(index < 0) {
+					keys.add(key);
+					values.add(amount);
+				} else {
+					values.set(index, values.get(index) + amount);
+				}
+			}
+			return this;
+		}
+		@Override
+		public void close() {
+			if(trace.enabled) {
+				duration = System.nanoTime() - start;
+				trace.events.add(this);
+			}
+		}
+	}
+
+	private final boolean enabled;
+	private final long origin = System.nanoTime();
+	private final ConcurrentLinkedQueue<Span> events = new ConcurrentLinkedQueue<>();
+	private final Span idle = new Span(this, "", "");
+
+	public BuildTrace() {
+		this(true);
+	}
+	private BuildTrace(boolean enabled) {
+		this.enabled = enabled;
+	}
+	public boolean isEnabled() {
+		return enabled;
+	}
+	public Span begin(String category, String name) {
+		if(enabled == false) {
+			return idle;
+		}
+		return new Span(this, category, name);
+	}
+	public void write(Path file) throws IOException {
+		if(enabled == false) {
+			return;
+		}
+		try(Writer out =
+			new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8))) {
+			out.write("{\"traceEvents\":[");
+			String separator = "\n";
+			for(Span span = events.poll(); span != null; span = events.poll()) {
+				out.write(separator);
+				separator = ",\n";
+				writeEvent(out, span);
+			}
+			out.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+		}
+	}
+	private void writeEvent(Writer out, Span span) throws IOException {
+		out.write("{\"name\":");
+		Json.writeString(out, span.name);
+		out.write(",\"cat\":");
+		Json.writeString(out, span.category);
+		out.write(",\"ph\":\"X\",\"pid\":1,\"tid\":" + span.thread);
+		out.write(",\"ts\":" + (span.start - origin) / 1000);
+		out.write(",\"dur\":" + span.duration / 1000);
+		out.write(",\"args\":{");
+		for(int i = 0, n = span.keys.size(); i < n; i++) {
+			if(i > 0) {
+				out.write(",");
+			}
+			Json.writeString(out, span.keys.get(i));
+			out.write(":" + span.values.get(i));
+		}
+		out.write("}}");
+	}
+}
@@ -0,0 +1,156 @@
+package project;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.jar.JarFile;
+import utils.lists.Files;
+import utils.lists.HashMap;
+import utils.lists.Paths;
+
+public class BundleIndex {
+	private static final int MAGIC = 0x42494431;
+
+	public static final class Bundle {
+		public final Path path;
+		public final HashMap<String, String> manifest;
+		public final String symbolicName;
+		public final String version;
+		public final String exports;
+		public final String imports;
+		public final String requires;
+		public final Path localization;
+		final long hash;
+
+		Bundle(Path path, HashMap<String, String> manifest, Path localization, long hash) {
+			this.path = path;
+			this.manifest = manifest;
+			String name = manifest.get("Bundle-SymbolicName");
+			this.symbolicName = name != null ? name.split(";")[0].trim() : null;
+			this.version = manifest.get("Bundle-Version");
+			this.exports = manifest.get("Export-Package");
+			this.imports = manifest.get("Import-Package");
+			this.requires = manifest.get("Require-Bundle");
+			this.localization = localization;
+			this.hash = hash;
+		}
+		public boolean isComplete() {
+			return symbolicName != null && version != null;
+		}
+		public Plugin plugin() {
+			return Plugin.fromManifest(path, manifest);
+		}
+	}
+
+	private final Path file;
+	private HashMap<Path, Bundle> bundles = new HashMap<>();
+	private boolean changed;
+	private int parsed;
+
+	public BundleIndex(Path file) {
+		this.file = file;
+	}
+	public synchronized HashMap<Path, Bundle> update(Snapshot snapshot) throws IOException {
+		HashMap<Path, Bundle> updated = new HashMap<>();
+		parsed = 0;
+		for(Path pluginPath : snapshot.listAll(Paths.get("plugins"))) {
+			byte[] bytes = snapshot.getFileAsBytes(pluginPath.resolve(JarFile.MANIFEST_NAME));
+			if(bytes == null) {
+				continue;
+			}
+			long hash = ContentIndex.hash(bytes);
+			Bundle bundle = bundles.get(pluginPath);
+			if(bundle == null || bundle.hash != hash || isLocalizationMoved(snapshot, bundle)) {
+				Plugin plugin = new Plugin(pluginPath, bytes);
+				bundle = new Bundle(pluginPath, plugin.manifest, plugin.getLocalizationPath(snapshot), hash);
+				changed = true;
+				parsed++;
+			}
+			updated.put(pluginPath, bundle);
+		}
+		if(updated.size() != bundles.size()) {
+			changed = true;
+		}
+		bundles = updated;
+		return bundles.toHashMap();
+	}
+	public synchronized int parsedCount() {
+		return parsed;
+	}
+	public synchronized Bundle get(Path pluginPath) {
+		return bundles.get(pluginPath);
+	}
+	public synchronized void load() throws IOException {
+		bundles = new HashMap<>();
+		changed = false;
+		if(Files.isRegularFile(file) == false) {
+			return;
+		}
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if(in.readInt() != MAGIC) {
+				throw new IOException("Not a bundle index: " + file);
+			}
+			for(int i = 0, n = in.readInt(); i < n; i++) {
+				Path path = Paths.get(readString(in));
+				long hash = in.readLong();
+				String localization = readString(in);
+				HashMap<String, String> manifest = new HashMap<>();
+				for(int j = 0, headers = in.readInt(); j < headers; j++) {
+					manifest.put(readString(in), readString(in));
+				}
+				Path localizationPath = localization.isEmpty() ? null : Paths.get(localization);
+				bundles.put(path, new Bundle(path, manifest, localizationPath, hash));
+			}
+		} catch(EOFException e) {
+			bundles = new HashMap<>();
+			throw new IOException("Truncated bundle index: " + file, e);
+		}
+	}
+	public synchronized void save() throws IOException {
+		if(changed == false) {
+			return;
+		}
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(bundles.size());
+			for(HashMap.Entry<Path, Bundle> entry : bundles) {
+				Bundle bundle = entry.rhs;
+				writeString(out, Snapshot.toUnixPath(bundle.path));
+				out.writeLong(bundle.hash);
+				writeString(out, bundle.localization != null ? Snapshot.toUnixPath(bundle.localization) : "");
+				out.writeInt(bundle.manifest.size());
+				for(HashMap.Entry<String, String> header : bundle.manifest) {
+					writeString(out, header.lhs);
+					writeString(out, header.rhs);
+				}
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		changed = false;
+	}
+	private static boolean isLocalizationMoved(Snapshot snapshot, Bundle bundle) {
+		if(bundle.localization == null) {
+			return snapshot.isFound(bundle.path.resolve("OSGI-INF/l10n/bundle.properties")) ||
+			bundle.manifest.containsKey("Bundle-Localization") &&
+			snapshot.isFound(bundle.path.resolve(bundle.manifest.get("Bundle-Localization") + ".properties"));
+		}
+		return snapshot.notFound(bundle.localization);
+	}
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+}
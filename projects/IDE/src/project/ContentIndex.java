@@ -0,0 +1,246 @@
+package project;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import utils.lists.Files;
+import utils.lists.HashMap;
+import utils.lists.HashSet;
+import utils.streams.functions.IOConsumer;
+
+public class ContentIndex {
+	private static final int MAGIC = 0x43494433;
+	private static final byte PUT = 'P';
+	private static final byte REMOVE = 'R';
+	private static final int COMPACTION_RATIO = 2;
+	private static final int COMPACTION_MINIMUM = 1024;
+
+	private static final class Entry {
+		final long size;
+		final long modified;
+		final long hash;
+		final String digest;
+
+		Entry(long size, long modified, long hash, String digest) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+			this.digest = digest;
+		}
+		boolean isSame(Entry other) {
+			return other != null &&
+			size == other.size &&
+			modified == other.modified &&
+			hash == other.hash &&
+			digest.equals(other.digest);
+		}
+	}
+
+	public static final class Hasher {
+		private final CRC32 crc = new CRC32();
+		private final Adler32 adler = new Adler32();
+
+		public void update(byte[] bytes, int offset, int length) {
+			crc.update(bytes, offset, length);
+			adler.update(bytes, offset, length);
+		}
+		public long hash() {
+			return crc.getValue() << 32 | adler.getValue();
+		}
+	}
+
+	private final Path file;
+	private final HashMap<String, Entry> entries = new HashMap<>();
+	private final HashSet<String> changed = new HashSet<>();
+	private int records;
+	private boolean compact;
+
+	public ContentIndex(Path file) {
+		this.file = file;
+	}
+	public static long hash(byte[] bytes) {
+		Hasher hasher = new Hasher();
+		hasher.update(bytes, 0, bytes.length);
+		return hasher.hash();
+	}
+	public synchronized void load() throws IOException {
+		entries.clear();
+		changed.clear();
+		records = 0;
+		compact = false;
+		if(Files.isRegularFile(file) == false) {
+			return;
+		}
+		compact = true;
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if(in.readInt() != MAGIC) {
+				throw new IOException("Not a content index: " + file);
+			}
+			while(true) {
+				byte operation;
+				try {
+					operation = in.readByte();
+				} catch(@SuppressWarnings("unused") EOFException end) {
+					break;
+				}
+				String path = in.readUTF();
+				if(operation == PUT) {
+					entries.put(path, new Entry(in.readLong(), in.readLong(), in.readLong(), in.readUTF()));
+				} else if(operation == REMOVE) {
+					entries.remove(path);
+				} else {
+					entries.clear();
+					throw new IOException("Corrupted content index " + file + " after " + records + " records");
+				}
+				records++;
+			}
+			compact = false;
+		} catch(@SuppressWarnings("unused") EOFException e) {
+			System.out.println("\nIgnoring incomplete last record in " + file);
+			compact = true;
+		}
+	}
+	public synchronized void save() throws IOException {
+		if(changed.isEmpty() && compact == false) {
+			return;
+		}
+		if(compact ||
+		Files.isRegularFile(file) == false ||
+		records + changed.size() > COMPACTION_RATIO * Math.max(entries.size(), COMPACTION_MINIMUM)) {
+			rewrite();
+		} else {
+			append();
+		}
+		changed.clear();
+		compact = false;
+	}
+	private void rewrite() throws IOException {
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+			out.writeInt(MAGIC);
+			for(HashMap.Entry<String, Entry> entry : entries) {
+				writePut(out, entry.lhs, entry.rhs);
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		records = entries.size();
+	}
+	private void append() throws IOException {
+		try(DataOutputStream out = new DataOutputStream(
+			new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND)))) {
+			for(String path : changed) {
+				Entry entry = entries.get(path);
+				if(entry != null) {
+					writePut(out, path, entry);
+				} else {
+					out.writeByte(REMOVE);
+					out.writeUTF(path);
+				}
+			}
+		}
+		records += changed.size();
+	}
+	private static void writePut(DataOutputStream out, String path, Entry entry) throws IOException {
+		out.writeByte(PUT);
+		out.writeUTF(path);
+		out.writeLong(entry.size);
+		out.writeLong(entry.modified);
+		out.writeLong(entry.hash);
+		out.writeUTF(entry.digest);
+	}
+	public synchronized boolean isUnchanged(Path path, BasicFileAttributes attributes) {
+		Entry entry = entries.get(path.toString());
+		return entry != null &&
+		entry.size == attributes.size() &&
+		entry.modified == toNanos(attributes.lastModifiedTime());
+	}
+	public synchronized boolean hasContent(Path path, long size, long hash) {
+		Entry entry = entries.get(path.toString());
+		return entry != null && entry.size == size && entry.hash == hash;
+	}
+	private synchronized boolean hasDigest(Path path, String digest) {
+		Entry entry = entries.get(path.toString());
+		return digest == null || entry != null && digest.equals(entry.digest);
+	}
+	public synchronized HashSet<String> digests() {
+		HashSet<String> digests = new HashSet<>();
+		for(HashMap.Entry<String, Entry> entry : entries) {
+			if(entry.rhs.digest.isEmpty() == false) {
+				digests.add(entry.rhs.digest);
+			}
+		}
+		return digests;
+	}
+	public void put(Path path, long size, FileTime modified, long hash) {
+		put(path, size, modified, hash, null);
+	}
+	public synchronized void put(Path path, long size, FileTime modified, long hash, String digest) {
+		String key = path.toString();
+		Entry entry = new Entry(size, toNanos(modified), hash, digest != null ? digest : "");
+		if(entry.isSame(entries.get(key)) == false) {
+			entries.put(key, entry);
+			changed.add(key);
+		}
+	}
+	public synchronized void remove(Path path) {
+		String key = path.toString();
+		if(entries.containsKey(key)) {
+			entries.remove(key);
+			changed.add(key);
+		}
+	}
+	public boolean write(Path path, byte[] bytes, FileTime modified) throws IOException {
+		return write(path, bytes.length, hash(bytes), null, modified, p -> Files.write(p, bytes));
+	}
+	public boolean write(Path path, long size, long hash, String digest, FileTime modified, IOConsumer<Path> writer)
+		throws IOException {
+		if(Files.isRegularFile(path)) {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			if(isUnchanged(path, attributes) && hasContent(path, size, hash) && hasDigest(path, digest)) {
+				put(path, size, touch(path, digest, modified, attributes.lastModifiedTime()), hash, digest);
+				return false;
+			}
+		}
+		writer.accept(path);
+		put(path, size, touch(path, digest, modified, Files.getLastModifiedTime(path)), hash, digest);
+		return true;
+	}
+	private static FileTime touch(Path path, String digest, FileTime modified, FileTime current) throws IOException {
+		if(digest != null) {
+			return current;
+		}
+		Files.setLastModifiedTime(path, modified);
+		return modified;
+	}
+	public void setLastModifiedTime(Path path, FileTime modified) throws IOException {
+		Entry entry;
+		synchronized(this) {
+			entry = entries.get(path.toString());
+		}
+		if(entry != null && Files.isRegularFile(path)) {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			Files.setLastModifiedTime(path, modified);
+			if(isUnchanged(path, attributes)) {
+				put(path, entry.size, modified, entry.hash);
+			} else {
+				remove(path);
+			}
+			return;
+		}
+		Files.setLastModifiedTime(path, modified);
+	}
+	private static long toNanos(FileTime time) {
+		return time.to(TimeUnit.NANOSECONDS);
+	}
+}
@@ -0,0 +1,22 @@
+package project;
+
+import java.io.IOException;
+import java.io.Writer;
+
+public class Json {
+	public static void writeString(Writer out, String string) throws IOException {
+		out.write('"');
+		for(int i = 0, n = string.length(); i < n; i++) {
+			char c = string.charAt(i);
+			if(c == '"' || c == '\\') {
+				out.write('\\');
+				out.write(c);
+			} else if(c < ' ') {
+				out.write(String.format("\\u%04x", (int) c));
+			} else {
+				out.write(c);
+			}
+		}
+		out.write('"');
+	}
+}
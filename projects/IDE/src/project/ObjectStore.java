@@ -0,0 +1,116 @@
+package project;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import utils.lists.ArrayList;
+import utils.lists.Files;
+import utils.lists.HashSet;
+import utils.streams.functions.IOConsumer;
+
+public class ObjectStore {
+	private static final String DIGEST = "SHA-256";
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final Path folder;
+	private final long threshold;
+	private volatile boolean linking = true;
+
+	public ObjectStore(Path folder, long threshold) {
+		this.folder = folder;
+		this.threshold = threshold;
+	}
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST);
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	public static String digest(byte[] bytes) {
+		return toHex(newDigest().digest(bytes));
+	}
+	public static String toHex(byte[] digest) {
+		char[] chars = new char[digest.length * 2];
+		for(int i = 0; i < digest.length; i++) {
+			chars[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+			chars[2 * i + 1] = HEX[digest[i] & 0xf];
+		}
+		return new String(chars);
+	}
+	public boolean accepts(long size) {
+		return size >= threshold;
+	}
+	public boolean materialize(
+		Path target,
+		long size,
+		String digest,
+		IOConsumer<OutputStream> content,
+		FileTime modified) throws IOException {
+		Path object = objectPath(digest);
+		if(Files.isRegularFile(object) == false || Files.size(object) != size) {
+			Files.createDirectories(object.getParent());
+			Path temporary = Files.createTempFile(object.getParent(), "object", ".tmp");
+			try {
+				write(temporary, content);
+				Files.setLastModifiedTime(temporary, modified);
+				Files.move(temporary, object, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temporary);
+			}
+		}
+		Files.deleteIfExists(target);
+		if(linking) {
+			try {
+				Files.createLink(target, object);
+				return true;
+			} catch(UnsupportedOperationException | FileSystemException e) {
+				linking = false;
+				System.out.println("\nCannot hard link into " + target.getParent() + ", copying from " + folder);
+			}
+		}
+		try(
+			FileChannel in = FileChannel.open(object, StandardOpenOption.READ);
+			FileChannel out =
+				FileChannel.open(
+					target,
+					StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.WRITE)) {
+			for(long position = 0; position < size;) {
+				position += in.transferTo(position, size - position, out);
+			}
+		}
+		Files.setLastModifiedTime(target, modified);
+		return false;
+	}
+	public int prune(HashSet<String> live) throws IOException {
+		if(Files.isDirectory(folder) == false) {
+			return 0;
+		}
+		ArrayList<Path> objects = Files.walk(folder).filter(Files::isRegularFile).toList();
+		int removed = 0;
+		for(Path object : objects) {
+			if(live.contains(object.getFileName().toString()) == false) {
+				Files.delete(object);
+				removed++;
+			}
+		}
+		return removed;
+	}
+	private static void write(Path file, IOConsumer<OutputStream> content) throws IOException {
+		try(OutputStream out = Files.newOutputStream(file)) {
+			content.accept(out);
+		}
+	}
+	private Path objectPath(String digest) {
+		return folder.resolve(digest.substring(0, 2)).resolve(digest);
+	}
+}
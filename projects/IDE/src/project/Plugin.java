@@ -62,6 +62,9 @@ public class Plugin implements Comparable<Plugin> {
 	public Plugin(Path path, HashMap<Path, byte[]> contents) throws IOException {
 		this(path, contents, readManifest(path, contents));
 	}
+	public static Plugin fromManifest(Path path, HashMap<String, String> manifest) {
+		return new Plugin(path, new HashMap<>(), manifest);
+	}
 	public String name() {
 		return id;
 	}
@@ -136,17 +139,24 @@ public class Plugin implements Comparable<Plugin> {
 		return fileName.substring(0, fileName.length() - shape.length());
 	}
 	public Map<String, String> getLocalization(Snapshot snapshot) throws IOException {
+		Path fileName = getLocalizationPath(snapshot);
+		if(fileName != null) {
+			return snapshot.getFileAsProperties(fileName);
+		}
+		return Map.of();
+	}
+	public Path getLocalizationPath(Snapshot snapshot) {
 		if(manifest.containsKey("Bundle-Localization")) {
 			Path fileName = root.resolve(manifest.get("Bundle-Localization") + ".properties");
 			if(snapshot.isFound(fileName)) {
-				return snapshot.getFileAsProperties(fileName);
+				return fileName;
 			}
 		}
 		Path fileName = root.resolve("OSGI-INF/l10n/bundle.properties");
 		if(snapshot.isFound(fileName)) {
-			return snapshot.getFileAsProperties(fileName);
+			return fileName;
 		}
-		return Map.of();
+		return null;
 	}
 	private static HashMap<String, String> readManifest(Path path, HashMap<Path, byte[]> contents) throws IOException {
 		byte[] manifestBytes = contents.get(Paths.get(JarFile.MANIFEST_NAME));
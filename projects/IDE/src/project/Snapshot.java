@@ -1,8 +1,10 @@
 package project;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.Path;
@@ -11,9 +13,17 @@ import java.time.Instant;
 import java.util.Comparator;
 import java.util.Properties;
 import java.util.jar.JarFile;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 import javax.xml.stream.XMLStreamException;
@@ -27,38 +37,245 @@ import utils.lists.Map;
 import utils.lists.Paths;
 import utils.lists.Set;
 import utils.streams.functions.ExDoubleConsumer;
+import utils.streams.functions.IOConsumer;
 import utils.streams.functions.IOFunction;
 import utils.streams2.IntStream;
 import utils.streams2.Stream;
 import utils.streams2.Streams;
 
 public class Snapshot {
+	interface Loader {
+		byte[] load() throws IOException;
+	}
 	public static class Content {
+		private static final Content[] NO_CHILDREN = {};
+		final Path path;
 		byte[] bytes;
+		Loader loader;
 		Instant modified;
-		HashSet<Path> contained = new HashSet<>();
+		private Content[] children = NO_CHILDREN;
+		private int childCount;
+		private Archive archive;
+		private int archiveLevel;
+		private Path remapped;
 
-		Content(Instant modified) {
+		Content(Path path, Instant modified) {
+			this.path = path;
 			this.modified = modified;
 		}
+		int childCount() {
+			return childCount;
+		}
+		Content child(int index) {
+			return children[index];
+		}
+		Content[] children() {
+			return java.util.Arrays.copyOf(children, childCount);
+		}
+		void addChild(Content child) {
+			int index = indexOf(child.path);
+			if(index >= 0) {
+				children[index] = child;
+				return;
+			}
+			index = -index - 1;
+			if(childCount == children.length) {
+				children = java.util.Arrays.copyOf(children, Math.max(4, childCount + (childCount >> 1)));
+			}
+			System.arraycopy(children, index, children, index + 1, childCount - index);
+			children[index] = child;
+			childCount++;
+		}
+		void removeChild(Path childPath) {
+			int index = indexOf(childPath);
+			if(index < 0) {
+				return;
+			}
+			childCount--;
+			System.arraycopy(children, index + 1, children, index, childCount - index);
+			children[childCount] = null;
+			if(childCount == 0) {
+				children = NO_CHILDREN;
+			}
+		}
+		private int indexOf(Path childPath) {
+			int low = 0;
+			int high = childCount - 1;
+			while(low <= high) {
+				int middle = low + high >>> 1;
+				int comparison = children[middle].path.compareTo(childPath);
+				if(comparison < 0) {
+					low = middle + 1;
+				} else if(comparison > 0) {
+					high = middle - 1;
+				} else {
+					return middle;
+				}
+			}
+			return -low - 1;
+		}
+		synchronized Archive archive(int level) {
+			return archiveLevel == level ? archive : null;
+		}
+		synchronized Archive archive(int level, Archive newArchive) {
+			if(archive != null && archiveLevel == level) {
+				if(archive != newArchive) {
+					newArchive.release();
+				}
+				return archive;
+			}
+			if(archive != null) {
+				archive.release();
+			}
+			archive = newArchive;
+			archiveLevel = level;
+			return newArchive;
+		}
+		synchronized Path remapped() {
+			return remapped;
+		}
+		synchronized Path remapped(Path newRemapped) {
+			remapped = newRemapped;
+			return newRemapped;
+		}
+		synchronized void reload(Loader newLoader) {
+			if(loader != null) {
+				loader = newLoader;
+			}
+		}
+		synchronized void invalidate() {
+			if(archive != null) {
+				archive.release();
+				archive = null;
+			}
+		}
+		boolean isFile() {
+			return bytes != null || loader != null;
+		}
+		synchronized byte[] bytes() {
+			if(bytes == null && loader != null) {
+				bytes = data();
+				loader = null;
+			}
+			return bytes;
+		}
+		synchronized byte[] data() {
+			if(bytes != null || loader == null) {
+				return bytes;
+			}
+			try {
+				return loader.load();
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
 		@Override
 		public String toString() {
 			return "[" +
 			(bytes != null ? "bytes=" + bytes.length + ", " : "") +
+			(loader != null ? "lazy, " : "") +
+			(archive != null ? "archive=" + archive.size + ", " : "") +
 			(modified != null ? "modified=" + modified + ", " : "") +
-			(contained != null ? "contained=" + contained.size() : "") +
+			(childCount > 0 ? "contained=" + childCount : "") +
 			"]";
 		}
 	}
 
+	interface Compressor<E extends Exception> {
+		Archive compress() throws IOException, E;
+	}
+	private static class CompressionFailure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		CompressionFailure(Exception cause) {
+			super(cause);
+		}
+	}
+	private static class WriteJob<E extends Exception> {
+		private final ExDoubleConsumer<E> monitor;
+		private final int total;
+		private final ForkJoinPool pool;
+		private final Thread owner = Thread.currentThread();
+		private final AtomicInteger progress = new AtomicInteger(1);
+		private final AtomicLong entries = new AtomicLong();
+		private final AtomicLong written = new AtomicLong();
+		private final AtomicLong unchanged = new AtomicLong();
+		private final AtomicLong compressed = new AtomicLong();
+		private final AtomicLong reused = new AtomicLong();
+		private final AtomicLong spilled = new AtomicLong();
+		private final AtomicLong linked = new AtomicLong();
+		private final ConcurrentLinkedQueue<Archive> uncached = new ConcurrentLinkedQueue<>();
+
+		private final HashMap<Path, Content> overrides;
+
+		WriteJob(ExDoubleConsumer<E> monitor, int total, ForkJoinPool pool, HashMap<Path, Content> overrides) {
+			this.monitor = monitor;
+			this.total = total;
+			this.pool = pool;
+			this.overrides = overrides;
+		}
+		void step() throws E {
+			int current = progress.incrementAndGet();
+			if(Thread.currentThread() == owner) {
+				monitor.accept(current / (double) total);
+			}
+		}
+		ForkJoinTask<Archive> fork(Compressor<E> compressor) {
+			RecursiveTask<Archive> task = new RecursiveTask<Archive>() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected Archive compute() {
+					try {
+						return compressor.compress();
+					} catch(Exception e) {
+						throw new CompressionFailure(e);
+					}
+				}
+			};
+			if(ForkJoinTask.getPool() == pool) {
+				return task.fork();
+			}
+			return pool.submit(task);
+		}
+		ForkJoinTask<Archive> completed(Archive archive) {
+			ForkJoinTask<Archive> task = ForkJoinTask.adapt(() -> archive);
+			task.complete(archive);
+			return task;
+		}
+		@SuppressWarnings("unchecked")
+		Archive join(ForkJoinTask<Archive> task) throws IOException, E {
+			try {
+				return task.join();
+			} catch(CompressionFailure e) {
+				Throwable cause = e.getCause();
+				if(cause instanceof IOException) {
+					throw (IOException) cause;
+				}
+				if(cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw (E) cause;
+			}
+		}
+	}
+
 	private static final Path ROOT = Paths.get("a");
+	private static final Path PLUGINS = ROOT.resolve("plugins");
+	private static final Path FEATURES = ROOT.resolve("features");
 	private HashMap<Path, Content> contents = new HashMap<>();
 	private Instant now;
 	private static final Comparator<Path> LONGEST_FIRST = Comparator.comparingInt(p -> -p.getNameCount());
 	public final IOFunction<Path, Path> BUNDLE_REMAPPER = this::remapper;
 	private List<IOFunction<Path, Path>> remappers = List.of(BUNDLE_REMAPPER);
-	private int progress;
-	private int progressTotal;
+	private SnapshotJournal journal;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private volatile ForkJoinPool pool = new ForkJoinPool(parallelism);
+	private ContentIndex targetIndex;
+	private ObjectStore objectStore;
+	private BuildTrace trace = BuildTrace.DISABLED;
+	private Archive.Budget budget = new Archive.Budget(Runtime.getRuntime().maxMemory() / 4);
+	private Path spillFolder = Paths.get(System.getProperty("java.io.tmpdir"));
 
 	public static void main(String[] args) throws IOException {
 		Path ide = Paths.get("C:\\Evening-IDE\\projects\\IDE\\target\\ide.zip");
@@ -76,11 +293,67 @@ public class Snapshot {
 	public Snapshot(Instant now) {
 		this.now = now;
 	}
+	public void setNow(Instant newNow) {
+		now = newNow;
+	}
+	public void journalTo(SnapshotJournal newJournal) {
+		journal = newJournal;
+	}
+	public void replay(SnapshotJournal source) throws IOException {
+		SnapshotJournal recording = journal;
+		journal = null;
+		try {
+			source.replay(this);
+		} finally {
+			journal = recording;
+		}
+	}
+	public Snapshot setParallelism(int newParallelism) {
+		if(newParallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive, was " + newParallelism);
+		}
+		if(newParallelism != parallelism) {
+			ForkJoinPool old = pool;
+			parallelism = newParallelism;
+			pool = new ForkJoinPool(newParallelism);
+			old.shutdown();
+		}
+		return this;
+	}
+	public Snapshot setTrace(BuildTrace newTrace) {
+		trace = newTrace;
+		return this;
+	}
+	public Snapshot setBufferBudget(long bytes) {
+		if(bytes < 0) {
+			throw new IllegalArgumentException("Buffer budget must not be negative, was " + bytes);
+		}
+		budget = new Archive.Budget(bytes);
+		invalidateArchives();
+		return this;
+	}
+	public Snapshot setSpillFolder(Path folder) {
+		spillFolder = folder;
+		return this;
+	}
+	public int deleteSpillFiles() throws IOException {
+		return Archive.deleteSpillFiles(spillFolder);
+	}
+	public Snapshot setObjectStore(ObjectStore store) {
+		objectStore = store;
+		return this;
+	}
+	public Snapshot setTargetIndex(ContentIndex index) {
+		targetIndex = index;
+		return this;
+	}
 	public void clearPathRemappers() {
 		remappers = List.of();
+		invalidateArchives();
 	}
 	public Snapshot addPathRemapper(IOFunction<Path, Path> mapper) {
 		remappers = remappers.add(mapper);
+		invalidateArchives();
 		return this;
 	}
 	public Snapshot addPathRemapper(String path1, String path2) {
@@ -107,7 +380,7 @@ public class Snapshot {
 	public void addFolder(Path path, Instant modified) throws IOException {
 		addFileImplementation(path, null, modified);
 	}
-	public void removeFile(Path path) {
+	public void removeFile(Path path) throws IOException {
 		removeFileImplementation(path);
 	}
 	public List<Path> listFiles(Path path) {
@@ -121,7 +394,10 @@ public class Snapshot {
 		if(content == null) {
 			return List.of();
 		}
-		return content.contained.toArrayList().sort().replaceAll(ROOT::relativize).toList();
+		return internalListAll(content).replaceAll(ROOT::relativize);
+	}
+	public byte[] getFileAsBytes(Path path) {
+		return getFileImplementation(path);
 	}
 	public String getFileAsString(Path path) {
 		byte[] bytes = getFileImplementation(path);
@@ -144,12 +420,9 @@ public class Snapshot {
 	}
 	public List<Path> listFilesRecursive(Path path) {
 		ArrayList<Path> result = new ArrayList<>();
-		for(Path folder : listFolders(path)) {
-			result.addAll(listFilesRecursive(folder));
-		}
-		for(Path folder : listFiles(path)) {
-			result.addAll(listFilesRecursive(folder));
-			result.add(folder);
+		Content content = contents.get(ROOT.resolve(path));
+		if(content != null) {
+			listFilesRecursive(content, result);
 		}
 		return result.toList();
 	}
@@ -170,6 +443,14 @@ public class Snapshot {
 		Set<String> names = Set.from(properties.stringPropertyNames());
 		return names.stream().toMap(s -> s, s -> properties.getProperty(s)).toMap();
 	}
+	public Instant getModified(Path path) {
+		Content content = contents.get(ROOT.resolve(path));
+		return content != null ? content.modified : null;
+	}
+	public boolean isFile(Path path) {
+		Content content = contents.get(ROOT.resolve(path));
+		return content != null && content.isFile();
+	}
 	public boolean notFound(Path path) {
 		return containsImplementation(path) == false;
 	}
@@ -180,10 +461,46 @@ public class Snapshot {
 		write(path, d -> {});
 	}
 	public <E extends Exception> void write(Path path, ExDoubleConsumer<E> monitor) throws IOException, E {
+		write(path, monitor, new HashMap<>());
+	}
+	public <E extends Exception> void write(Path path, ExDoubleConsumer<E> monitor, HashMap<Path, byte[]> overrides)
+		throws IOException, E {
+		HashMap<Path, Content> replaced = new HashMap<>();
+		for(HashMap.Entry<Path, byte[]> entry : overrides) {
+			Path root = ROOT.resolve(entry.lhs);
+			Content original = contents.get(root);
+			if(original == null || original.isFile() == false) {
+				throw new IllegalArgumentException("Only existing files can be overridden, not " + entry.lhs);
+			}
+			Content content = new Content(root, original.modified);
+			content.bytes = entry.rhs;
+			replaced.put(root, content);
+		}
 		boolean isZIP = path.getFileName().toString().endsWith(".zip");
 		int level = isZIP ? 0 : 9;
 		Content content = contents.get(ROOT);
-		writeSnapshot(path, content, level, monitor);
+		ForkJoinPool pool = this.pool;
+		try(BuildTrace.Span span = trace.begin("snapshot", "write " + path.getFileName())) {
+			if(level > 0) {
+				precomputeRemaps(pool);
+			}
+			WriteJob<E> job = new WriteJob<>(monitor, contents.size() + 1, pool, replaced);
+			try {
+				writeSnapshot(path, content, level, job);
+			} finally {
+				for(Archive archive : job.uncached) {
+					archive.release();
+				}
+			}
+			span
+				.add("entries", job.entries.get())
+				.add("bytesWritten", job.written.get())
+				.add("filesUnchanged", job.unchanged.get())
+				.add("archivesCompressed", job.compressed.get())
+				.add("archivesReused", job.reused.get())
+				.add("archivesSpilled", job.spilled.get())
+				.add("filesLinked", job.linked.get());
+		}
 		monitor.accept(1);
 	}
 	public void read(Path start) throws IOException {
@@ -207,71 +524,165 @@ public class Snapshot {
 			contents.get(ROOT).bytes = null;
 		}
 	}
+	public void readLazily(Path start) throws IOException {
+		String name = start.getFileName().toString();
+		if(Files.isRegularFile(start) == false || name.endsWith(".jar") == false && name.endsWith(".zip") == false) {
+			read(start);
+			return;
+		}
+		ZipIndex index;
+		try {
+			index = ZipIndex.map(start);
+		} catch(ZipException e) {
+			System.out.println("\nReading " + start + " eagerly: " + e.getMessage());
+			read(start);
+			return;
+		}
+		internalAddFile(ROOT, null, Files.getLastModifiedTime(start).toInstant());
+		indexZip(index, ROOT);
+	}
+	public void relocate(Path zip) throws IOException {
+		relocateZip(ZipIndex.map(zip), ROOT);
+	}
 	public void clear() {
+		invalidateArchives();
 		contents.clear();
 	}
 	private Path remapper(Path src) throws IOException {
-		if(src.getNameCount() == 2) {
-			if(src.startsWith(Paths.get("plugins"))) {
-				Content content = contents.get(ROOT.resolve(src).resolve(JarFile.MANIFEST_NAME));
-				if(content != null) {
-					Plugin plugin = new Plugin(src, content.bytes);
-					return src.resolveSibling(plugin.fileName());
-				}
-			} else if(src.startsWith(Paths.get("features"))) {
-				Content content = contents.get(ROOT.resolve(src).resolve("feature.xml"));
-				if(content != null) {
-					Content properties = contents.get(ROOT.resolve(src).resolve("feature.properties"));
-					try {
-						Feature feature =
-							Feature.fromXML(src, content.bytes, properties != null ? properties.bytes : null);
-						return src.resolveSibling(feature.fileName());
-					} catch(XMLStreamException e) {
-						throw new IOException(e);
-					}
+		if(src.getNameCount() != 2) {
+			return src;
+		}
+		Content root = contents.get(ROOT.resolve(src));
+		if(root == null) {
+			return src;
+		}
+		Path remapped = root.remapped();
+		if(remapped == null) {
+			remapped = root.remapped(computeRemapped(src));
+		}
+		return remapped;
+	}
+	private Path computeRemapped(Path src) throws IOException {
+		if(src.startsWith(Paths.get("plugins"))) {
+			Content content = contents.get(ROOT.resolve(src).resolve(JarFile.MANIFEST_NAME));
+			if(content != null) {
+				Plugin plugin = new Plugin(src, content.bytes());
+				return src.resolveSibling(plugin.fileName());
+			}
+		} else if(src.startsWith(Paths.get("features"))) {
+			Content content = contents.get(ROOT.resolve(src).resolve("feature.xml"));
+			if(content != null) {
+				Content properties = contents.get(ROOT.resolve(src).resolve("feature.properties"));
+				try {
+					Feature feature =
+						Feature.fromXML(src, content.bytes(), properties != null ? properties.bytes() : null);
+					return src.resolveSibling(feature.fileName());
+				} catch(XMLStreamException e) {
+					throw new IOException(e);
 				}
 			}
 		}
 		return src;
 	}
+	private void precomputeRemaps(ForkJoinPool pool) throws IOException {
+		if(remappers.contains(BUNDLE_REMAPPER) == false) {
+			return;
+		}
+		ArrayList<ForkJoinTask<Path>> tasks = new ArrayList<>();
+		for(Path folder : List.of(PLUGINS, FEATURES)) {
+			Content content = contents.get(folder);
+			if(content == null) {
+				continue;
+			}
+			for(int i = 0, n = content.childCount(); i < n; i++) {
+				Content child = content.child(i);
+				if(child.remapped() == null) {
+					Path src = ROOT.relativize(child.path);
+					tasks.add(pool.submit(() -> remapper(src)));
+				}
+			}
+		}
+		for(ForkJoinTask<Path> task : tasks) {
+			try {
+				task.get();
+			} catch(ExecutionException e) {
+				if(e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException(e.getCause());
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while remapping bundle names");
+			}
+		}
+	}
 	private void copyFilesImplementation(String srcFolder, String dstFolder) throws IOException {
 		Path dstPath = Paths.get(dstFolder);
-		removeFileImplementation(dstPath);
-		Path srcPath = Paths.get(srcFolder);
-		List<Path> files = listFilesOrFoldersImplementation(srcPath, true);
-		for(Path filePath : files) {
-			Path targetPath = dstPath.resolve(srcPath.relativize(filePath));
-			byte[] targetBytes = getFileImplementation(filePath);
-			Instant targetInstant = getInstantImplementation(filePath);
-			addFileImplementation(targetPath, targetBytes, targetInstant);
+		Content folder = contents.get(ROOT.resolve(srcFolder));
+		if(folder == null) {
+			removeFileImplementation(dstPath);
+			return;
+		}
+		HashSet<String> copied = new HashSet<>();
+		for(Content file : folder.children()) {
+			if(file.isFile()) {
+				String name = file.path.getFileName().toString();
+				copied.add(name);
+				Path targetPath = dstPath.resolve(name);
+				Content existing = contents.get(ROOT.resolve(targetPath));
+				if(existing != null && existing.isFile() == false) {
+					removeFileImplementation(targetPath);
+				} else if(isSameFile(existing, file)) {
+					continue;
+				}
+				addFileImplementation(targetPath, file.bytes(), file.modified);
+			}
+		}
+		Content target = contents.get(ROOT.resolve(dstPath));
+		if(target != null) {
+			for(Content stale : target.children()) {
+				String name = stale.path.getFileName().toString();
+				if(copied.contains(name) == false) {
+					removeFileImplementation(dstPath.resolve(name));
+				}
+			}
 		}
 	}
-	private void addFileImplementation(Path path, byte[] bytes, Instant when) throws IOException {
+	private static boolean isSameFile(Content existing, Content file) {
+		return existing != null &&
+		existing.modified.equals(file.modified) &&
+		Arrays.equals(existing.data(), file.data());
+	}
+	void addFileImplementation(Path path, byte[] bytes, Instant when) throws IOException {
 		Path root = ROOT.resolve(path);
 		String name = path.getFileName().toString();
+		record(root, path, bytes, when);
 		readFile(bytes, root, name, when);
 	}
 	private void replaceFileImplementation(Path path, byte[] bytes) throws IOException {
 		Path root = ROOT.resolve(path);
 		String name = path.getFileName().toString();
 		Instant modified = contents.containsKey(root) ? contents.get(root).modified : now;
+		record(root, path, bytes, modified);
 		readFile(bytes, root, name, modified);
 	}
-	private byte[] getFileImplementation(Path path) {
-		Path root = ROOT.resolve(path);
+	private void record(Path root, Path path, byte[] bytes, Instant modified) throws IOException {
+		if(journal == null) {
+			return;
+		}
 		Content content = contents.get(root);
-		if(content == null) {
-			return null;
+		if(content != null && content.modified.equals(modified) && Arrays.equals(content.data(), bytes)) {
+			return;
 		}
-		return content.bytes;
+		journal.recordAdd(path, bytes, modified);
 	}
-	private Instant getInstantImplementation(Path path) {
+	private byte[] getFileImplementation(Path path) {
 		Path root = ROOT.resolve(path);
 		Content content = contents.get(root);
 		if(content == null) {
 			return null;
 		}
-		return content.modified;
+		return content.bytes();
 	}
 	private boolean containsImplementation(Path path) {
 		Path root = ROOT.resolve(path);
@@ -283,8 +694,7 @@ public class Snapshot {
 			readZip(bytes, root);
 		} else if(name.endsWith(".gz")) {
 			root = root.resolve(name.substring(0, name.length() - 3));
-			bytes = Streams.readFully(new GZIPInputStream(new ByteArrayInputStream(bytes)));
-			internalAddFile(root, bytes, modified);
+			internalAddFile(root, gunzip(bytes), modified);
 		}
 	}
 	private void readZip(byte[] bytes, Path root) throws IOException {
@@ -292,10 +702,70 @@ public class Snapshot {
 			ZipEntry entry;
 			while((entry = zip.getNextEntry()) != null) {
 				String name = entry.getName();
-				if(name.contains("..")) {
+				if(isSkipped(name)) {
 					continue;
 				}
-				if(!IntStream.from(name).allMatch(
+				Path path = root.resolve(name);
+				Instant instant = entry.getLastModifiedTime().toInstant();
+				if(entry.isDirectory()) {
+					internalAddFile(path, null, instant);
+				} else {
+					bytes = Streams.readAllBytes(zip);
+					readFile(bytes, path, name, instant);
+				}
+			}
+		}
+	}
+	private void indexZip(ZipIndex index, Path root) throws IOException {
+		for(ZipIndex.Entry entry : index.entries()) {
+			String name = entry.name;
+			if(isSkipped(name)) {
+				continue;
+			}
+			Path path = root.resolve(name);
+			if(entry.isDirectory()) {
+				internalAddFile(path, null, entry.modified);
+				continue;
+			}
+			internalAddFile(path, null, () -> index.read(entry), entry.modified);
+			if(name.endsWith(".jar") || name.endsWith(".zip")) {
+				indexZip(index.nested(entry), path);
+			} else if(name.endsWith(".gz")) {
+				Path gzPath = path.resolve(name.substring(0, name.length() - 3));
+				internalAddFile(gzPath, null, () -> gunzip(index.read(entry)), entry.modified);
+			}
+		}
+	}
+	private void relocateZip(ZipIndex index, Path root) throws IOException {
+		for(ZipIndex.Entry entry : index.entries()) {
+			String name = entry.name;
+			if(isSkipped(name) || entry.isDirectory()) {
+				continue;
+			}
+			Path path = root.resolve(name);
+			Content content = contents.get(path);
+			if(content == null) {
+				continue;
+			}
+			content.reload(() -> index.read(entry));
+			if(name.endsWith(".jar") || name.endsWith(".zip")) {
+				relocateZip(index.nested(entry), path);
+			} else if(name.endsWith(".gz")) {
+				Content gz = contents.get(path.resolve(name.substring(0, name.length() - 3)));
+				if(gz != null) {
+					gz.reload(() -> gunzip(index.read(entry)));
+				}
+			}
+		}
+	}
+	private static byte[] gunzip(byte[] bytes) throws IOException {
+		return Streams.readFully(new GZIPInputStream(new ByteArrayInputStream(bytes)));
+	}
+	private static boolean isSkipped(String name) {
+		if(name.contains("..")) {
+			return true;
+		}
+		if(!IntStream.from(name).allMatch(
 					i -> i >= 'a' &&
 					i <= 'z' ||
 					i >= 'A' &&
@@ -310,38 +780,35 @@ public class Snapshot {
 					i == '(' ||
 					i == ')' ||
 					i == '-')) {
-					System.out.println("Skipped " + Arrays.toString(name.toCharArray()));
-					continue;
-				}
-				Path path = root.resolve(name);
-				Instant instant = entry.getLastModifiedTime().toInstant();
-				if(entry.isDirectory()) {
-					internalAddFile(path, null, instant);
-				} else {
-					bytes = Streams.readAllBytes(zip);
-					readFile(bytes, path, name, instant);
-				}
-			}
+			System.out.println("Skipped " + Arrays.toString(name.toCharArray()));
+			return true;
 		}
+		return false;
 	}
 	private void internalAddFile(Path path, byte[] bytes, Instant modified) {
+		internalAddFile(path, bytes, null, modified);
+	}
+	private void internalAddFile(Path path, byte[] bytes, Loader loader, Instant modified) {
 		Content content = contents.get(path);
 		if(content == null) {
-			content = new Content(modified);
+			content = new Content(path, modified);
 			contents.put(path, content);
 		}
 		if(content.modified.isAfter(modified) == false) {
+			invalidate(path);
 			content.bytes = bytes;
+			content.loader = loader;
 			content.modified = modified;
 			Path parent;
 			while((parent = path.getParent()) != null) {
+				Content child = content;
 				content = contents.get(parent);
 				if(content == null) {
-					content = new Content(modified);
+					content = new Content(parent, modified);
 					contents.put(parent, content);
 				}
-				content.contained.add(path);
-				if(content.modified.isAfter(modified) || content.bytes != null) {
+				content.addChild(child);
+				if(content.modified.isAfter(modified) || content.isFile()) {
 					break;
 				}
 				content.modified = modified;
@@ -349,32 +816,40 @@ public class Snapshot {
 			}
 		}
 	}
-	private void removeFileImplementation(Path path) {
+	private void removeFileImplementation(Path path) throws IOException {
+		removeFileImplementation(path, now);
+	}
+	void removeFileImplementation(Path path, Instant modified) throws IOException {
 		Path root = ROOT.resolve(path);
 		Content folder = contents.get(root);
-		if(folder != null && folder.contained.notEmpty()) {
-			for(Path contentPath : folder.contained.toList()) {
-				removeRecursive(contentPath);
-			}
+		if(folder == null) {
+			return;
+		}
+		if(journal != null) {
+			journal.recordRemove(path, modified);
+		}
+		for(Content child : folder.children()) {
+			removeRecursive(child.path, modified);
 		}
-		internalRemoveFile(root, now);
+		internalRemoveFile(root, modified);
 	}
-	private void removeRecursive(Path root) {
+	private void removeRecursive(Path root, Instant modified) {
 		Content folder = contents.get(root);
-		if(folder != null && folder.contained.notEmpty()) {
-			for(Path contentPath : folder.contained.toList()) {
-				removeRecursive(contentPath);
+		if(folder != null) {
+			for(Content child : folder.children()) {
+				removeRecursive(child.path, modified);
 			}
 		}
-		internalRemoveFile(root, now);
+		internalRemoveFile(root, modified);
 	}
 	private void internalRemoveFile(Path path, Instant modified) {
 		Content content = contents.get(path);
 		if(content == null) {
 			return;
 		}
-		if(content.contained.notEmpty()) {
-			throw new IllegalArgumentException("Path " + path + " contains " + content.contained.size() + " items");
+		invalidate(path);
+		if(content.childCount() > 0) {
+			throw new IllegalArgumentException("Path " + path + " contains " + content.childCount() + " items");
 		}
 		boolean remove = true;
 		Path parent;
@@ -384,16 +859,48 @@ public class Snapshot {
 				throw new IllegalStateException("Parent " + parent + " of " + path + " not found");
 			}
 			if(remove) {
-				content.contained.remove(path);
-				remove = content.contained.isEmpty();
+				content.removeChild(path);
+				remove = content.childCount() == 0;
 			}
-			if(content.modified.isAfter(modified) || content.bytes != null) {
+			if(content.modified.isAfter(modified) || content.isFile()) {
 				break;
 			}
 			content.modified = modified;
 			path = parent;
 		}
 	}
+	private void invalidate(Path path) {
+		for(Path parent = path; parent != null; parent = parent.getParent()) {
+			Content content = contents.get(parent);
+			if(content != null) {
+				content.invalidate();
+			}
+		}
+		Path bundle = bundleOf(path);
+		if(bundle != null) {
+			Content content = contents.get(bundle);
+			if(content != null) {
+				content.remapped(null);
+			}
+		}
+	}
+	private static Path bundleOf(Path path) {
+		int count = path.getNameCount();
+		if(count == 5 && path.startsWith(PLUGINS) && path.endsWith(JarFile.MANIFEST_NAME)) {
+			return path.getParent().getParent();
+		}
+		if(count == 4 &&
+		path.startsWith(FEATURES) &&
+		(path.endsWith("feature.xml") || path.endsWith("feature.properties"))) {
+			return path.getParent();
+		}
+		return null;
+	}
+	private void invalidateArchives() {
+		for(Content content : contents.values()) {
+			content.invalidate();
+		}
+	}
 	private List<Path> listFilesOrFoldersImplementation(Path path, boolean files) {
 		Content content = contents.get(ROOT.resolve(path));
 		if(content == null) {
@@ -401,28 +908,52 @@ public class Snapshot {
 		}
 		return internalListFilesOrFolders(content, files).replaceAll(ROOT::relativize);
 	}
-	private List<Path> internalListFilesOrFolders(Content content, boolean files) {
-		ArrayList<Path> list = content.contained.toArrayList();
-		list.filter(p -> contents.get(p).bytes != null == files);
-		list.sort();
+	private static List<Path> internalListAll(Content content) {
+		ArrayList<Path> list = new ArrayList<>(content.childCount());
+		for(int i = 0, n = content.childCount(); i < n; i++) {
+			list.add(content.child(i).path);
+		}
+		return list.toList();
+	}
+	private static List<Path> internalListFilesOrFolders(Content content, boolean files) {
+		ArrayList<Path> list = new ArrayList<>(content.childCount());
+		for(int i = 0, n = content.childCount(); i < n; i++) {
+			Content child = content.child(i);
+			if(child.isFile() == files) {
+				list.add(child.path);
+			}
+		}
 		return list.toList();
 	}
+	private void listFilesRecursive(Content content, ArrayList<Path> result) {
+		for(int i = 0, n = content.childCount(); i < n; i++) {
+			Content child = content.child(i);
+			if(child.isFile() == false) {
+				listFilesRecursive(child, result);
+			}
+		}
+		for(int i = 0, n = content.childCount(); i < n; i++) {
+			Content child = content.child(i);
+			if(child.isFile()) {
+				listFilesRecursive(child, result);
+				result.add(ROOT.relativize(child.path));
+			}
+		}
+	}
 	private <E extends Exception> void writeSnapshot(
 		Path target,
 		Content content,
 		int level,
-		ExDoubleConsumer<E> monitor) throws IOException, E {
-		progress = 1;
-		progressTotal = contents.size() + 1;
+		WriteJob<E> job) throws IOException, E {
 		String fileName = target.getFileName().toString();
 		if(isZIP(content, fileName)) {
 			Files.createDirectories(target.getParent());
-			writeZIP(target, content, level, monitor);
+			writeZIP(target, content, level, job);
 		} else if(isGZIP(content, fileName)) {
 			Files.createDirectories(target.getParent());
-			writeGZIP(target, content, monitor);
+			writeGZIP(target, content, job);
 		} else {
-			writeFolder(target, ROOT, content, level, monitor);
+			writeFolder(target, ROOT, content, level, job);
 		}
 	}
 	private <E extends Exception> void writeFolder(
@@ -430,14 +961,20 @@ public class Snapshot {
 		Path root,
 		Content folder,
 		int level,
-		ExDoubleConsumer<E> monitor) throws IOException, E {
-		progress(monitor);
+		WriteJob<E> job) throws IOException, E {
+		job.step();
 		Files.createDirectories(target);
 		HashSet<Path> existing = Files.list(target).toSet();
-		for(Path path : folder.contained) {
+		List<Path> paths = internalListAll(folder);
+		ArrayList<Path> files = new ArrayList<>(paths.size());
+		HashMap<Path, ForkJoinTask<Archive>> archives = new HashMap<>();
+		HashSet<Path> updates = new HashSet<>();
+		HashSet<Path> checks = new HashSet<>();
+		for(Path path : paths) {
 			String fileName = remap(path, level).getFileName().toString();
 			Path file = target.resolve(fileName);
-			Content content = contents.get(path);
+			files.add(file);
+			Content content = content(path, job);
 			boolean update = true;
 			boolean check = true;
 			if(Files.exists(file)) {
@@ -445,26 +982,42 @@ public class Snapshot {
 				update = instant.isBefore(content.modified);
 				check = instant.isAfter(content.modified) == false;
 			}
-			if(update || check) {
+			if(update) {
+				updates.add(path);
+				if(isZIP(content, fileName)) {
+					archives.put(path, forkZIP(path, content, level, job));
+				} else if(isGZIP(content, fileName)) {
+					archives.put(path, forkGZIP(content, level, job));
+				}
+			}
+			if(check) {
+				checks.add(path);
+			}
+		}
+		for(int i = 0, n = paths.size(); i < n; i++) {
+			Path path = paths.get(i);
+			Path file = files.get(i);
+			String fileName = file.getFileName().toString();
+			Content content = content(path, job);
+			boolean update = updates.contains(path);
+			if(update || checks.contains(path)) {
 				if(isZIP(content, fileName)) {
 					if(update) {
-						byte[] bytes = createZIP(path, content, level, monitor);
-						writeFile(file, bytes, content.modified);
+						writeFile(file, job.join(archives.get(path)), content.modified, job, false);
 					}
 				} else if(isGZIP(content, fileName)) {
 					if(update) {
-						byte[] bytes = createGZIP(content);
-						writeFile(file, bytes, content.modified);
+						writeFile(file, job.join(archives.get(path)), content.modified, job, false);
 					}
-					progressFolder(path, monitor);
-				} else if(content.bytes != null) {
+					progressFolder(path, job);
+				} else if(content.isFile()) {
 					if(update) {
-						byte[] bytes = content.bytes;
-						writeFile(file, bytes, content.modified);
+						byte[] bytes = content.data();
+						writeFile(file, bytes, content.modified, job);
 					}
-					progressFolder(path, monitor);
+					progressFolder(path, job);
 				} else {
-					writeFolder(file, root, content, level, monitor);
+					writeFolder(file, root, content, level, job);
 				}
 			}
 			existing.remove(file);
@@ -481,122 +1034,244 @@ public class Snapshot {
 		}
 		Files.setLastModifiedTime(target, FileTime.from(folder.modified));
 	}
-	private static void clean(Path path) throws IOException {
+	private Content content(Path path, WriteJob<?> job) {
+		Content content = job.overrides.get(path);
+		return content != null ? content : contents.get(path);
+	}
+	private void clean(Path path) throws IOException {
+		if(targetIndex != null) {
+			targetIndex.remove(path);
+		}
 		try {
 			Files.delete(path);
 		} catch(DirectoryNotEmptyException e) {
 			System.out.println("\nCould not delete " + path + " because " + e.getReason());
 		}
 	}
-	private <E extends Exception> void writeGZIP(Path target, Content content, ExDoubleConsumer<E> monitor)
+	private <E extends Exception> void writeGZIP(Path target, Content content, WriteJob<E> job)
 		throws IOException, E {
-		progress(monitor);
-		byte[] bytes = createGZIP(content);
-		writeFile(target, bytes, content.modified);
-		progressFolder(target, monitor);
+		job.step();
+		Archive archive = createGZIP(content, job);
+		try {
+			writeFile(target, archive, content.modified, job, true);
+		} finally {
+			archive.release();
+		}
+		progressFolder(target, job);
 	}
-	private byte[] createGZIP(Content content) throws IOException {
+	private <E extends Exception> ForkJoinTask<Archive>
+		forkZIP(Path target, Content content, int level, WriteJob<E> job) throws E {
+		Archive archive = content.archive(level);
+		if(archive != null) {
+			job.reused.incrementAndGet();
+			progressFolder(target, job);
+			return job.completed(archive);
+		}
+		return job.fork(() -> {
+			try(BuildTrace.Span span = trace.begin("archive", toUnixPath(ROOT.relativize(target)))) {
+				Archive created = createZIP(target, content, level, job, new Archive.Output(budget, spillFolder));
+				span.add("bytes", created.size);
+				count(created, job);
+				return content.archive(level, created);
+			}
+		});
+	}
+	private <E extends Exception> ForkJoinTask<Archive> forkGZIP(Content content, int level, WriteJob<E> job) {
+		if(job.overrides.containsKey(internalListFilesOrFolders(content, true).get(0))) {
+			return job.fork(() -> {
+				Archive created = createGZIP(content, job);
+				count(created, job);
+				job.uncached.add(created);
+				return created;
+			});
+		}
+		Archive archive = content.archive(level);
+		if(archive != null) {
+			job.reused.incrementAndGet();
+			return job.completed(archive);
+		}
+		return job.fork(() -> {
+			Archive created = createGZIP(content, job);
+			count(created, job);
+			return content.archive(level, created);
+		});
+	}
+	private static void count(Archive archive, WriteJob<?> job) {
+		job.compressed.incrementAndGet();
+		if(archive.isSpilled()) {
+			job.spilled.incrementAndGet();
+		}
+	}
+	private Archive createGZIP(Content content, WriteJob<?> job) throws IOException {
 		List<Path> gzFiles = internalListFilesOrFolders(content, true);
-		ByteArrayOutputStream bout = new ByteArrayOutputStream(1024 * 1024);
-		try(GZIPOutputStream gzip = new GZIPOutputStream(bout);) {
-			Content data2 = contents.get(gzFiles.get(0));
-			gzip.write(data2.bytes);
+		Archive.Output out = new Archive.Output(budget, spillFolder);
+		try {
+			try(GZIPOutputStream gzip = new GZIPOutputStream(out, 64 * 1024);) {
+				Content data2 = content(gzFiles.get(0), job);
+				gzip.write(data2.data());
+			}
+			return out.toArchive();
+		} catch(IOException | RuntimeException e) {
+			out.discard();
+			throw e;
 		}
-		byte[] bytes = bout.toByteArray();
-		return bytes;
 	}
 	private static boolean isZIP(Content content, String fileName) {
-		return content.bytes == null && (fileName.endsWith(".jar") || fileName.endsWith(".zip"));
+		return content.isFile() == false && (fileName.endsWith(".jar") || fileName.endsWith(".zip"));
 	}
 	private boolean isGZIP(Content content, String fileName) {
 		return fileName.endsWith(".gz") &&
-		content.contained.size() == 1 &&
+		content.childCount() == 1 &&
 		internalListFilesOrFolders(content, true).notEmpty();
 	}
-	private <E extends Exception> void writeZIP(Path target, Content content, int level, ExDoubleConsumer<E> monitor)
+	private <E extends Exception> void writeZIP(Path target, Content content, int level, WriteJob<E> job)
 		throws IOException, E {
 		target = remap(target, level);
-		byte[] bytes = createZIP(ROOT, content, level, monitor);
-		Instant modified = content.modified;
-		writeFile(target, bytes, modified);
+		Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+		Archive archive = createZIP(ROOT, content, level, job, new Archive.Output(temporary));
+		try {
+			writeFile(target, archive, content.modified, job, true);
+		} finally {
+			archive.release();
+		}
 	}
-	private static void writeFile(Path target, byte[] bytes, Instant modified) throws IOException {
-		Files.write(target, bytes);
-		Files.setLastModifiedTime(target, FileTime.from(modified));
+	private void writeFile(Path target, byte[] bytes, Instant modified, WriteJob<?> job) throws IOException {
+		IOConsumer<Path> writer = p -> Files.write(p, bytes);
+		if(targetIndex == null && objectStore == null) {
+			job.written.addAndGet(bytes.length);
+			writer.accept(target);
+			Files.setLastModifiedTime(target, FileTime.from(modified));
+			return;
+		}
+		String digest = objectStore != null && objectStore.accepts(bytes.length) ? ObjectStore.digest(bytes) : null;
+		long hash = ContentIndex.hash(bytes);
+		writeFile(target, bytes.length, hash, digest, writer, out -> out.write(bytes), modified, job);
 	}
-
-	static int depth;
-
-	private <E extends Exception> byte[]
-		createZIP(Path target, Content content, int level, ExDoubleConsumer<E> monitor) throws IOException, E {
-		ByteArrayOutputStream bout = new ByteArrayOutputStream();
-		try(ZipOutputStream out = new ZipOutputStream(bout);) {
-			out.setLevel(level);
-			if(depth++ > 100) {
-				System.out.println("BREAK");
-			}
-			writeFolderToZIP(out, target, content, level, monitor);
-		} finally {
-			depth--;
+	private void writeFile(Path target, Archive archive, Instant modified, WriteJob<?> job, boolean move)
+		throws IOException {
+		IOConsumer<Path> writer = move ? archive::moveTo : archive::copyTo;
+		IOConsumer<OutputStream> shared = move ? null : archive::writeTo;
+		writeFile(target, archive.size, archive.hash, archive.digest, writer, shared, modified, job);
+	}
+	private void writeFile(
+		Path target,
+		long size,
+		long hash,
+		String digest,
+		IOConsumer<Path> writer,
+		IOConsumer<OutputStream> shared,
+		Instant modified,
+		WriteJob<?> job) throws IOException {
+		FileTime time = FileTime.from(modified);
+		String object = null;
+		if(objectStore != null) {
+			IOConsumer<Path> content = writer;
+			if(shared != null && objectStore.accepts(size)) {
+				object = digest;
+				writer = p -> {
+					if(objectStore.materialize(p, size, digest, shared, time)) {
+						job.linked.incrementAndGet();
+					}
+				};
+			} else {
+				writer = p -> {
+					Files.deleteIfExists(p);
+					content.accept(p);
+				};
+			}
+		}
+		if(targetIndex != null) {
+			if(targetIndex.write(target, size, hash, object, time, writer)) {
+				job.written.addAndGet(size);
+			} else {
+				job.unchanged.incrementAndGet();
+			}
+			return;
+		}
+		job.written.addAndGet(size);
+		writer.accept(target);
+		if(object == null) {
+			Files.setLastModifiedTime(target, time);
+		}
+	}
+	private <E extends Exception> Archive createZIP(
+		Path target,
+		Content content,
+		int level,
+		WriteJob<E> job,
+		Archive.Output bout) throws IOException, E {
+		try {
+			try(ZipOutputStream out = new ZipOutputStream(bout);) {
+				out.setLevel(level);
+				writeFolderToZIP(out, target, content, level, job);
+			}
+			return bout.toArchive();
+		} catch(Exception e) {
+			bout.discard();
+			throw e;
 		}
-		return bout.toByteArray();
 	}
 	private <E extends Exception> void writeFolderToZIP(
 		ZipOutputStream zip,
 		Path root,
 		Content folder,
 		int level,
-		ExDoubleConsumer<E> monitor) throws IOException, E {
-		progress(monitor);
+		WriteJob<E> job) throws IOException, E {
+		job.step();
 		for(Path path : internalListFilesOrFolders(folder, true)) {
 			Path file = relative(root, remap(path, level));
-			Content data = contents.get(path);
-			writeFileToZIP(zip, file, data.bytes, data.modified);
-			progress(monitor);
+			Content data = content(path, job);
+			writeFileToZIP(zip, file, data.data(), data.modified);
+			job.entries.incrementAndGet();
+			job.step();
 		}
-		for(Path path : internalListFilesOrFolders(folder, false)) {
+		List<Path> folders = internalListFilesOrFolders(folder, false);
+		ArrayList<Path> files = new ArrayList<>(folders.size());
+		ArrayList<ForkJoinTask<Archive>> archives = new ArrayList<>(folders.size());
+		for(Path path : folders) {
 			Path file = relative(root, remap(path, level));
-			Content content = contents.get(path);
+			files.add(file);
+			Content content = content(path, job);
 			String fileName = file.getFileName().toString();
+			ForkJoinTask<Archive> archive = null;
 			if(level > 0) {
 				if(fileName.endsWith(".zip") || fileName.endsWith(".jar")) {
-					byte[] bytes = createZIP(path, content, level, monitor);
-					writeFileToZIP(zip, file, bytes, content.modified);
-					continue;
-				} else if(fileName.endsWith(".gz")) {
-					List<Path> gzFiles = internalListFilesOrFolders(content, true);
-					if(gzFiles.size() == 1) {
-						ByteArrayOutputStream bout = new ByteArrayOutputStream(1024 * 1024);
-						try(GZIPOutputStream gzip = new GZIPOutputStream(bout);) {
-							Content data2 = contents.get(gzFiles.get(0));
-							gzip.write(data2.bytes);
-						}
-						byte[] bytes = bout.toByteArray();
-						writeFileToZIP(zip, file, bytes, content.modified);
-						progressFolder(path, monitor);
-						continue;
-					}
+					archive = forkZIP(path, content, level, job);
+				} else if(fileName.endsWith(".gz") && internalListFilesOrFolders(content, true).size() == 1) {
+					archive = forkGZIP(content, level, job);
+				}
+			}
+			archives.add(archive);
+		}
+		for(int i = 0, n = folders.size(); i < n; i++) {
+			Path path = folders.get(i);
+			Path file = files.get(i);
+			Content content = content(path, job);
+			ForkJoinTask<Archive> archive = archives.get(i);
+			if(archive != null) {
+				writeFileToZIP(zip, file, job.join(archive), content.modified);
+				job.entries.incrementAndGet();
+				if(file.getFileName().toString().endsWith(".gz")) {
+					progressFolder(path, job);
 				}
+				continue;
 			}
 			ZipEntry entry = new ZipEntry(toUnixPath(file) + "/");
 			entry.setLastModifiedTime(FileTime.from(content.modified));
 			zip.putNextEntry(entry);
 			zip.closeEntry();
-			writeFolderToZIP(zip, root, content, level, monitor);
+			writeFolderToZIP(zip, root, content, level, job);
 		}
 	}
-	private <E extends Exception> void progressFolder(Path path, ExDoubleConsumer<E> monitor) throws E {
-		progress(monitor);
+	private <E extends Exception> void progressFolder(Path path, WriteJob<E> job) throws E {
+		job.step();
 		for(Path folder : listFolders(path)) {
-			progressFolder(folder, monitor);
+			progressFolder(folder, job);
 		}
 		for(Path folder : listFiles(path)) {
-			progressFolder(folder, monitor);
+			progressFolder(folder, job);
 		}
 	}
-	private <E extends Exception> void progress(ExDoubleConsumer<E> monitor) throws E {
-		monitor.accept(++progress / (double) progressTotal);
-	}
 	private Path remap(Path path, int level) throws IOException {
 		if(level == 0) {
 			return path;
@@ -621,6 +1296,13 @@ public class Snapshot {
 		zip.write(bytes);
 		zip.closeEntry();
 	}
+	private static void writeFileToZIP(ZipOutputStream zip, Path file, Archive archive, Instant modified)
+		throws IOException {
+		ZipEntry entry = createEntry(file, modified);
+		zip.putNextEntry(entry);
+		archive.writeTo(zip);
+		zip.closeEntry();
+	}
 	private static ZipEntry createEntry(Path file, Instant modified) {
 		String name = toUnixPath(file);
 		ZipEntry entry = new ZipEntry(name);
@@ -628,7 +1310,7 @@ public class Snapshot {
 		entry.setLastModifiedTime(lastModifiedTime);
 		return entry;
 	}
-	private static String toUnixPath(Path path) {
+	static String toUnixPath(Path path) {
 		return String.join("/", Stream.from(path).map(Path::toString).iterable());
 	}
 }
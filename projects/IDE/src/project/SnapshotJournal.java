@@ -0,0 +1,227 @@
+package project;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.zip.CRC32;
+import utils.lists.Files;
+import utils.lists.Paths;
+
+public class SnapshotJournal {
+	private static final int MAGIC = 0x534e4a33;
+	private static final int HEADER_SIZE = 12;
+	private static final int FRAME_SIZE = 8;
+	private static final byte ADD_FILE = 'F';
+	private static final byte ADD_FOLDER = 'D';
+	private static final byte REMOVE = 'R';
+	private final Path file;
+	private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+	private final DataOutputStream out = new DataOutputStream(pending);
+	private int pendingCount;
+
+	public SnapshotJournal(Path file) {
+		this.file = file;
+	}
+	public Path file() {
+		return file;
+	}
+	public int pendingCount() {
+		return pendingCount;
+	}
+	public long size() throws IOException {
+		if(Files.isRegularFile(file) == false) {
+			return 0;
+		}
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return channel.size();
+		}
+	}
+	public long position() throws IOException {
+		if(Files.isRegularFile(file) == false) {
+			return 0;
+		}
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return readBase(channel) + channel.size() - HEADER_SIZE;
+		}
+	}
+	public void discardUpTo(long position) throws IOException {
+		if(Files.isRegularFile(file) == false) {
+			return;
+		}
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try(FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+			long base = readBase(in);
+			if(position <= base) {
+				return;
+			}
+			long start = HEADER_SIZE + position - base;
+			long end = in.size();
+			if(start > end) {
+				throw new IOException("Snapshot journal " + file + " ends before position " + position);
+			}
+			try(FileChannel out = FileChannel.open(
+				temporary,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+				writeFully(out, header(position));
+				while(start < end) {
+					start += in.transferTo(start, end - start, out);
+				}
+				out.force(false);
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	public void flush() throws IOException {
+		if(pendingCount == 0) {
+			return;
+		}
+		out.flush();
+		byte[] batch = pending.toByteArray();
+		ByteBuffer frame = ByteBuffer.allocate(FRAME_SIZE);
+		frame.putInt(batch.length).putInt(checksum(batch)).flip();
+		try(FileChannel channel =
+			FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			if(channel.size() == 0) {
+				writeFully(channel, header(0));
+			}
+			writeFully(channel, frame);
+			writeFully(channel, ByteBuffer.wrap(batch));
+			channel.force(false);
+		}
+		discard();
+	}
+	public void discard() {
+		pending.reset();
+		pendingCount = 0;
+	}
+	public void delete() throws IOException {
+		discard();
+		if(Files.isRegularFile(file)) {
+			Files.delete(file);
+		}
+	}
+	void recordAdd(Path path, byte[] bytes, Instant modified) throws IOException {
+		out.writeByte(bytes == null ? ADD_FOLDER : ADD_FILE);
+		writePath(path);
+		writeInstant(modified);
+		if(bytes != null) {
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		pendingCount++;
+	}
+	void recordRemove(Path path, Instant modified) throws IOException {
+		out.writeByte(REMOVE);
+		writePath(path);
+		writeInstant(modified);
+		pendingCount++;
+	}
+	int replay(Snapshot snapshot) throws IOException {
+		if(Files.isRegularFile(file) == false) {
+			return 0;
+		}
+		int applied = 0;
+		long committed = HEADER_SIZE;
+		long size = Files.size(file);
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if(size < HEADER_SIZE || in.readInt() != MAGIC) {
+				throw new IOException("Not a snapshot journal: " + file);
+			}
+			in.readLong();
+			while(committed + FRAME_SIZE <= size) {
+				int length = in.readInt();
+				int checksum = in.readInt();
+				if(length < 0 || committed + FRAME_SIZE + length > size) {
+					break;
+				}
+				byte[] batch = new byte[length];
+				in.readFully(batch);
+				if(checksum(batch) != checksum) {
+					break;
+				}
+				applied += apply(snapshot, batch);
+				committed += FRAME_SIZE + length;
+			}
+		}
+		if(committed < size) {
+			System.out.println("\nTruncating incomplete batch of " + (size - committed) + " bytes in " + file);
+			try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				channel.truncate(committed);
+				channel.force(false);
+			}
+		}
+		return applied;
+	}
+	private int apply(Snapshot snapshot, byte[] batch) throws IOException {
+		int applied = 0;
+		try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(batch))) {
+			while(in.available() > 0) {
+				byte operation = in.readByte();
+				Path path = Paths.get(in.readUTF());
+				Instant modified = Instant.ofEpochSecond(in.readLong(), in.readInt());
+				switch(operation) {
+					case ADD_FILE:
+						byte[] bytes = new byte[in.readInt()];
+						in.readFully(bytes);
+						snapshot.addFileImplementation(path, bytes, modified);
+						break;
+					case ADD_FOLDER:
+						snapshot.addFileImplementation(path, null, modified);
+						break;
+					case REMOVE:
+						snapshot.removeFileImplementation(path, modified);
+						break;
+					default:
+						throw new IOException("Corrupted snapshot journal " + file + " after " + applied + " records");
+				}
+				applied++;
+			}
+		}
+		return applied;
+	}
+	private static int checksum(byte[] batch) {
+		CRC32 crc = new CRC32();
+		crc.update(batch, 0, batch.length);
+		return (int) crc.getValue();
+	}
+	private long readBase(FileChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while(header.hasRemaining()) {
+			if(channel.read(header, header.position()) < 0) {
+				throw new IOException("Truncated snapshot journal header: " + file);
+			}
+		}
+		if(header.getInt(0) != MAGIC) {
+			throw new IOException("Not a snapshot journal: " + file);
+		}
+		return header.getLong(4);
+	}
+	private static ByteBuffer header(long base) {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putLong(base).flip();
+		return header;
+	}
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+	private void writePath(Path path) throws IOException {
+		out.writeUTF(Snapshot.toUnixPath(path));
+	}
+	private void writeInstant(Instant modified) throws IOException {
+		out.writeLong(modified.getEpochSecond());
+		out.writeInt(modified.getNano());
+	}
+}
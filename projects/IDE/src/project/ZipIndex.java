@@ -0,0 +1,184 @@
+package project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import utils.lists.ArrayList;
+import utils.lists.List;
+
+final class ZipIndex {
+	static final class Entry {
+		final String name;
+		final int method;
+		final int compressedSize;
+		final int size;
+		final int localHeader;
+		final Instant modified;
+
+		Entry(String name, int method, int compressedSize, int size, int localHeader, Instant modified) {
+			this.name = name;
+			this.method = method;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeader = localHeader;
+			this.modified = modified;
+		}
+		boolean isDirectory() {
+			return name.endsWith("/");
+		}
+		@Override
+		public String toString() {
+			return "[" + name + ", method=" + method + ", " + compressedSize + "/" + size + " bytes]";
+		}
+	}
+
+	private static final int LOCAL_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_SIGNATURE = 0x02014b50;
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int END_SIZE = 22;
+	private static final int EXTENDED_TIMESTAMP = 0x5455;
+	private final ByteBuffer buffer;
+	private final List<Entry> entries;
+
+	private ZipIndex(ByteBuffer buffer) throws ZipException {
+		this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		this.entries = readCentralDirectory(this.buffer);
+	}
+	static ZipIndex map(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if(size > Integer.MAX_VALUE) {
+				throw new ZipException("Too large to be mapped: " + file);
+			}
+			return new ZipIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		}
+	}
+	static ZipIndex wrap(byte[] bytes) throws ZipException {
+		return new ZipIndex(ByteBuffer.wrap(bytes));
+	}
+	List<Entry> entries() {
+		return entries;
+	}
+	ZipIndex nested(Entry entry) throws IOException {
+		if(entry.method == ZipEntry.STORED) {
+			ByteBuffer data = data(entry);
+			return new ZipIndex(data);
+		}
+		return wrap(read(entry));
+	}
+	byte[] read(Entry entry) throws IOException {
+		ByteBuffer data = data(entry);
+		byte[] compressed = new byte[entry.compressedSize];
+		data.get(compressed);
+		if(entry.method == ZipEntry.STORED) {
+			return compressed;
+		}
+		if(entry.method != ZipEntry.DEFLATED) {
+			throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name);
+		}
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(compressed);
+			byte[] bytes = new byte[entry.size];
+			int offset = 0;
+			while(offset < bytes.length) {
+				int inflated = inflater.inflate(bytes, offset, bytes.length - offset);
+				if(inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+					throw new ZipException("Truncated entry " + entry.name);
+				}
+				offset += inflated;
+			}
+			return bytes;
+		} catch(DataFormatException e) {
+			throw new ZipException("Corrupted entry " + entry.name + ": " + e.getMessage());
+		} finally {
+			inflater.end();
+		}
+	}
+	private ByteBuffer data(Entry entry) throws ZipException {
+		int local = entry.localHeader;
+		if(buffer.getInt(local) != LOCAL_SIGNATURE) {
+			throw new ZipException("Missing local header for " + entry.name);
+		}
+		int start = local + 30 + (buffer.getShort(local + 26) & 0xffff) + (buffer.getShort(local + 28) & 0xffff);
+		ByteBuffer data = buffer.duplicate();
+		data.position(start).limit(start + entry.compressedSize);
+		return data.slice();
+	}
+	private static List<Entry> readCentralDirectory(ByteBuffer buffer) throws ZipException {
+		int end = findEnd(buffer);
+		int count = buffer.getShort(end + 10) & 0xffff;
+		long offset = buffer.getInt(end + 16) & 0xffffffffL;
+		if(count == 0xffff || offset == 0xffffffffL) {
+			throw new ZipException("ZIP64 archives are not indexed");
+		}
+		ArrayList<Entry> list = new ArrayList<>(count);
+		int position = (int) offset;
+		for(int i = 0; i < count; i++) {
+			if(buffer.getInt(position) != CENTRAL_SIGNATURE) {
+				throw new ZipException("Invalid central directory header at " + position);
+			}
+			int method = buffer.getShort(position + 10) & 0xffff;
+			int dosTime = buffer.getInt(position + 12);
+			long compressedSize = buffer.getInt(position + 20) & 0xffffffffL;
+			long size = buffer.getInt(position + 24) & 0xffffffffL;
+			int nameLength = buffer.getShort(position + 28) & 0xffff;
+			int extraLength = buffer.getShort(position + 30) & 0xffff;
+			int commentLength = buffer.getShort(position + 32) & 0xffff;
+			long localHeader = buffer.getInt(position + 42) & 0xffffffffL;
+			if(compressedSize >= Integer.MAX_VALUE || size >= Integer.MAX_VALUE || localHeader >= Integer.MAX_VALUE) {
+				throw new ZipException("ZIP64 archives are not indexed");
+			}
+			byte[] name = new byte[nameLength];
+			ByteBuffer nameBuffer = buffer.duplicate();
+			nameBuffer.position(position + 46);
+			nameBuffer.get(name);
+			int extra = position + 46 + nameLength;
+			Instant modified = readModified(buffer, extra, extraLength, dosTime);
+			String entryName = new String(name, StandardCharsets.UTF_8);
+			list.add(new Entry(entryName, method, (int) compressedSize, (int) size, (int) localHeader, modified));
+			position = extra + extraLength + commentLength;
+		}
+		return list.toList();
+	}
+	private static int findEnd(ByteBuffer buffer) throws ZipException {
+		int last = buffer.limit() - END_SIZE;
+		for(int position = last; position >= 0 && position >= last - 0xffff; position--) {
+			if(buffer.getInt(position) == END_SIGNATURE) {
+				return position;
+			}
+		}
+		throw new ZipException("End of central directory not found");
+	}
+	private static Instant readModified(ByteBuffer buffer, int extra, int extraLength, int dosTime) {
+		int position = extra;
+		while(position + 4 <= extra + extraLength) {
+			int id = buffer.getShort(position) & 0xffff;
+			int length = buffer.getShort(position + 2) & 0xffff;
+			if(id == EXTENDED_TIMESTAMP && length >= 5 && (buffer.get(position + 4) & 1) != 0) {
+				return Instant.ofEpochSecond(buffer.getInt(position + 5) & 0xffffffffL);
+			}
+			position += 4 + length;
+		}
+		LocalDateTime time =
+			LocalDateTime.of(
+				(dosTime >> 25 & 0x7f) + 1980,
+				Math.max(1, dosTime >> 21 & 0x0f),
+				Math.max(1, dosTime >> 16 & 0x1f),
+				dosTime >> 11 & 0x1f,
+				dosTime >> 5 & 0x3f,
+				(dosTime << 1 & 0x3e) % 60);
+		return time.atZone(ZoneId.systemDefault()).toInstant();
+	}
+}
@@ -0,0 +1,298 @@
+package project.combiner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import project.BundleIndex;
+import project.BundleIndex.Bundle;
+import project.Plugin;
+import project.Snapshot;
+import project.generator.RegenerateProjectsMain;
+import utils.lists.ArrayList;
+import utils.lists.Files;
+import utils.lists.HashMap;
+import utils.lists.Paths;
+
+public class BenchmarkBuildIDE {
+	private static final Path CURRENT_FOLDER = Paths.get("").toAbsolutePath();
+	private static final Path BENCHMARK = CURRENT_FOLDER.resolve("target/benchmark");
+	private static final Path TREE = BENCHMARK.resolve("tree");
+	private static final Path TREE_ZIP = BENCHMARK.resolve("tree.zip");
+	private static final Path TREE_FOLDER = BENCHMARK.resolve("tree-out");
+	private static final Instant NOW = Instant.parse("2015-01-01T00:00:00Z");
+	private static final int WARMUPS = 3;
+	private static final String[] WORDS = {
+		"org", "eclipse", "core", "runtime", "internal", "ui", "jface", "text", "resources", "jdt", "debug", "model",
+		"provisional", "equinox", "p2", "osgi", "service", "util", "viewers", "editor" };
+	private static final String[] PLATFORM_PLUGINS = {
+		"org.eclipse.platform", "org.eclipse.rcp", "org.eclipse.equinox.launcher", "org.eclipse.equinox.common",
+		"org.eclipse.equinox.ds", "org.eclipse.equinox.event", "org.eclipse.equinox.simpleconfigurator",
+		"org.eclipse.update.configurator", "org.eclipse.equinox.p2.reconciler.dropins" };
+	private static final String[] PLATFORM_FEATURES = {
+		"org.eclipse.platform", "org.eclipse.equinox.p2.user.ui", "org.eclipse.rcp.configuration" };
+	private static int plugins;
+	private static int iterations;
+	private static Snapshot snapshot;
+	private static long sink;
+
+	private interface Setup {
+		void run() throws IOException;
+	}
+
+	private interface Operation {
+		Object run() throws IOException;
+	}
+
+	public static void main(String[] args) throws IOException {
+		plugins = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+		iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		System.out.printf("Generating %d plugins into %s%n", plugins, TREE);
+		delete(BENCHMARK);
+		generateTree(new Random(plugins));
+		snapshot = read(TREE);
+		snapshot.write(TREE_ZIP);
+		System.out.printf("%-32s %10s %10s %10s%n", "benchmark", "min ms", "median ms", "max ms");
+		measure("read folder", () -> {}, () -> read(TREE));
+		measure("read zip", () -> {}, () -> read(TREE_ZIP));
+		measure("read zip lazily", () -> {}, () -> readLazily(TREE_ZIP));
+		measure("write zip", () -> snapshot = read(TREE), () -> write(TREE_ZIP));
+		measure("write zip, archives reused", () -> {}, () -> write(TREE_ZIP));
+		measure("write folder", () -> {
+			snapshot = read(TREE);
+			delete(TREE_FOLDER);
+		}, () -> write(TREE_FOLDER));
+		measure("manifests", () -> {}, () -> pluginToManifest(new BundleIndex(BENCHMARK.resolve("none"))));
+		BundleIndex bundles = new BundleIndex(BENCHMARK.resolve("none"));
+		measure("manifests, index reused", () -> {}, () -> pluginToManifest(bundles));
+		ArrayList<Plugin> list = readPlugins(bundles.update(snapshot));
+		measure("classpath dependencies", () -> {}, () -> RegenerateProjectsMain.combineDependencies(list));
+		Path none = BENCHMARK.resolve("none");
+		measure("p2 profile", () -> {}, () -> profile(new P2UnitCache(none)));
+		P2UnitCache units = new P2UnitCache(none);
+		measure("p2 profile, units reused", () -> {}, () -> profile(units));
+		System.out.printf("%-32s %10x%n", "result checksum", sink);
+	}
+	private static void measure(String name, Setup setup, Operation operation) throws IOException {
+		ArrayList<Long> times = new ArrayList<>();
+		for(int i = 0; i < WARMUPS + iterations; i++) {
+			setup.run();
+			long start = System.nanoTime();
+			Object result = operation.run();
+			long time = System.nanoTime() - start;
+			sink = 31 * sink + consume(result);
+			if(i >= WARMUPS) {
+				times.add(time);
+			}
+		}
+		times.sort();
+		System.out.printf(
+			"%-32s %10.1f %10.1f %10.1f%n",
+			name,
+			times.get(0) / 1e6,
+			times.get(times.size() / 2) / 1e6,
+			times.get(times.size() - 1) / 1e6);
+	}
+	private static long consume(Object result) {
+		return result instanceof byte[] ? Arrays.hashCode((byte[]) result) : result.hashCode();
+	}
+	private static Snapshot read(Path path) throws IOException {
+		Snapshot result = new Snapshot(NOW);
+		result.read(path);
+		return result;
+	}
+	private static Snapshot readLazily(Path path) throws IOException {
+		Snapshot result = new Snapshot(NOW);
+		result.readLazily(path);
+		return result;
+	}
+	private static long write(Path path) throws IOException {
+		snapshot.write(path);
+		return Files.isRegularFile(path) ? Files.size(path) : Files.list(path).toList().size();
+	}
+	private static HashMap<Path, HashMap<String, String>> pluginToManifest(BundleIndex bundles) throws IOException {
+		return MainBuildIDE.getPluginToManifest(bundles.update(snapshot));
+	}
+	private static byte[] profile(P2UnitCache units) throws IOException {
+		return P2ProfileGenerator.profileGz(snapshot, units, "0", "id", "id", "win32", "win32");
+	}
+	private static ArrayList<Plugin> readPlugins(HashMap<Path, Bundle> bundles) {
+		ArrayList<Plugin> list = new ArrayList<>();
+		for(HashMap.Entry<Path, Bundle> entry : bundles) {
+			list.add(entry.rhs.plugin());
+		}
+		return list.sort();
+	}
+	private static void generateTree(Random random) throws IOException {
+		Path pluginsFolder = TREE.resolve("plugins");
+		Path featuresFolder = TREE.resolve("features");
+		ArrayList<String> names = new ArrayList<>();
+		ArrayList<String> packages = new ArrayList<>();
+		names.add("org.apache.httpcomponents.httpclient");
+		names.addAll(PLATFORM_PLUGINS);
+		for(int i = names.size(); i < plugins; i++) {
+			names.add(name(random, i));
+		}
+		for(int i = 0; i < plugins; i++) {
+			String name = names.get(i);
+			String version = "3." + random.nextInt(12) + "." + random.nextInt(300) + ".v2015" + (1000 + i);
+			boolean platform = i > 0 && i <= PLATFORM_PLUGINS.length;
+			String fileName = platform ? name : name + "_" + version;
+			HashMap<String, byte[]> files = pluginFiles(random, names, packages, i, version);
+			if(platform ? name.equals("org.eclipse.platform") : i % 3 == 0) {
+				Path folder = pluginsFolder.resolve(fileName);
+				for(HashMap.Entry<String, byte[]> file : files) {
+					Path path = folder.resolve(file.lhs);
+					Files.createDirectories(path.getParent());
+					Files.write(path, file.rhs);
+				}
+				Path lib = folder.resolve("lib/" + name + ".jar");
+				Files.createDirectories(lib.getParent());
+				Files.write(lib, zip(pluginFiles(random, names, packages, i, version)));
+			} else {
+				Files.createDirectories(pluginsFolder);
+				Files.write(pluginsFolder.resolve(fileName + ".jar"), zip(files));
+			}
+		}
+		for(int i = 0; i < plugins / 20; i++) {
+			StringBuilder feature = new StringBuilder();
+			feature.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			feature.append("<feature id=\"feature" + i + "\" label=\"%featureName\" version=\"1.0.0\">\n");
+			for(int j = i * 20, n = Math.min(plugins, j + 20); j < n; j++) {
+				feature.append("   <plugin id=\"" + names.get(j) + "\" version=\"0.0.0\" unpack=\"false\"/>\n");
+			}
+			feature.append("</feature>\n");
+			Path path = featuresFolder.resolve("feature" + i + "_1.0.0/feature.xml");
+			Files.createDirectories(path.getParent());
+			Files.write(path, feature.toString().getBytes(StandardCharsets.UTF_8));
+		}
+		for(String id : PLATFORM_FEATURES) {
+			StringBuilder feature = new StringBuilder();
+			feature.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			feature.append("<feature id=\"" + id + "\" label=\"%featureName\" version=\"4.5.0.v20150101\"");
+			feature.append(" provider-name=\"%providerName\" plugin=\"" + PLATFORM_PLUGINS[0] + "\">\n");
+			feature.append("   <description url=\"%descriptionURL\">%description</description>\n");
+			feature.append("   <copyright>%copyright</copyright>\n");
+			feature.append("   <license url=\"%licenseURL\">%license</license>\n");
+			if(id.equals("org.eclipse.platform")) {
+				for(String plugin : PLATFORM_PLUGINS) {
+					feature.append("   <plugin id=\"" + plugin + "\" version=\"0.0.0\" unpack=\"false\"/>\n");
+				}
+			}
+			feature.append("</feature>\n");
+			Path folder = featuresFolder.resolve(id);
+			Files.createDirectories(folder);
+			Files.write(folder.resolve("feature.xml"), feature.toString().getBytes(StandardCharsets.UTF_8));
+			String properties =
+				"featureName = " + id + "\nproviderName = Eclipse.org\ndescription = " + new String(text(random, 200)) +
+				"\ndescriptionURL = http://www.eclipse.org\ncopyright = Eclipse.org\nlicense = EPL" +
+				"\nlicenseURL = license.html\n";
+			Files.write(folder.resolve("feature.properties"), properties.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+	private static HashMap<String, byte[]> pluginFiles(
+		Random random,
+		ArrayList<String> names,
+		ArrayList<String> packages,
+		int index,
+		String version) {
+		String name = names.get(index);
+		StringBuilder exports = new StringBuilder();
+		for(int i = 0, n = 1 + random.nextInt(6); i < n; i++) {
+			String pkg = name + "." + WORDS[random.nextInt(WORDS.length)] + i;
+			exports.append(i == 0 ? "" : ",").append(pkg).append(";version=\"" + version.split("\\.v")[0] + "\"");
+			packages.add(pkg);
+		}
+		StringBuilder requires = new StringBuilder();
+		StringBuilder imports = new StringBuilder("org.osgi.framework,org.osgi.service.cm");
+		for(int i = 0, n = index == 0 ? 0 : random.nextInt(Math.min(index, 8)); i < n; i++) {
+			String required = names.get(random.nextInt(index));
+			requires.append(i == 0 ? "" : ",").append(required).append(";bundle-version=\"[3.0.0,4.0.0)\"");
+			if(i % 3 == 0) {
+				requires.append(";visibility:=reexport");
+			}
+			imports.append(",").append(packages.get(random.nextInt(packages.size())));
+		}
+		StringBuilder manifest = new StringBuilder();
+		manifest.append("Manifest-Version: 1.0\r\n");
+		manifest.append("Bundle-ManifestVersion: 2\r\n");
+		manifest.append("Bundle-SymbolicName: " + name + ";singleton:=true\r\n");
+		manifest.append("Bundle-Version: " + version + "\r\n");
+		manifest.append("Bundle-Name: %pluginName\r\n");
+		manifest.append("Bundle-Vendor: %providerName\r\n");
+		manifest.append("Bundle-Localization: plugin\r\n");
+		manifest.append("Bundle-RequiredExecutionEnvironment: JavaSE-1.8\r\n");
+		appendHeader(manifest, "Export-Package", exports);
+		appendHeader(manifest, "Require-Bundle", requires);
+		appendHeader(manifest, "Import-Package", imports);
+		HashMap<String, byte[]> files = new HashMap<>();
+		files.put(JarFile.MANIFEST_NAME, manifest.toString().getBytes(StandardCharsets.UTF_8));
+		files.put("plugin.properties", ("pluginName = " + name + "\nproviderName = Eclipse.org\n").getBytes(
+			StandardCharsets.UTF_8));
+		files.put("about.html", text(random, 2000));
+		for(int i = 0, n = 10 + random.nextInt(50); i < n; i++) {
+			String folder = name.replace('.', '/') + "/" + WORDS[random.nextInt(WORDS.length)];
+			files.put(folder + "/Class" + i + ".class", classFile(random));
+		}
+		return files;
+	}
+	private static void appendHeader(StringBuilder manifest, String header, StringBuilder value) {
+		if(value.length() == 0) {
+			return;
+		}
+		String line = header + ": " + value;
+		manifest.append(line.substring(0, Math.min(70, line.length()))).append("\r\n");
+		for(int i = 70, n = line.length(); i < n; i += 69) {
+			manifest.append(" ").append(line.substring(i, Math.min(n, i + 69))).append("\r\n");
+		}
+	}
+	private static String name(Random random, int index) {
+		StringBuilder name = new StringBuilder("org.eclipse");
+		for(int i = 0, n = 1 + random.nextInt(3); i < n; i++) {
+			name.append('.').append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return name.append(index).toString();
+	}
+	private static byte[] classFile(Random random) {
+		byte[] bytes = new byte[1000 + random.nextInt(8000)];
+		for(int i = 0; i < bytes.length; i++) {
+			bytes[i] = random.nextInt(4) == 0 ? (byte) random.nextInt() : (byte) WORDS[i % WORDS.length].charAt(0);
+		}
+		return bytes;
+	}
+	private static byte[] text(Random random, int length) {
+		StringBuilder text = new StringBuilder();
+		while(text.length() < length) {
+			text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+		}
+		return text.toString().getBytes(StandardCharsets.UTF_8);
+	}
+	private static byte[] zip(HashMap<String, byte[]> files) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(ZipOutputStream zip = new ZipOutputStream(bytes)) {
+			for(HashMap.Entry<String, byte[]> file : files) {
+				ZipEntry entry = new ZipEntry(file.lhs);
+				entry.setTime(NOW.toEpochMilli());
+				zip.putNextEntry(entry);
+				zip.write(file.rhs);
+				zip.closeEntry();
+			}
+		}
+		return bytes.toByteArray();
+	}
+	private static void delete(Path folder) throws IOException {
+		if(Files.exists(folder) == false) {
+			return;
+		}
+		ArrayList<Path> paths = Files.walk(folder).toList();
+		for(int i = paths.size() - 1; i >= 0; i--) {
+			Files.delete(paths.get(i));
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package project.combiner;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import utils.lists.ArrayList;
+import utils.lists.Files;
+import utils.lists.HashMap;
+import utils.lists.HashSet;
+
+class ChangeWatcher implements AutoCloseable {
+	private final WatchService service;
+	private final HashMap<WatchKey, Path> keys = new HashMap<>();
+	private final ArrayList<Path> roots;
+	private final long quietMillis;
+
+	ChangeWatcher(ArrayList<Path> roots, long quietMillis) throws IOException {
+		this.service = FileSystems.getDefault().newWatchService();
+		this.roots = roots;
+		this.quietMillis = quietMillis;
+		for(Path root : roots) {
+			if(Files.isDirectory(root)) {
+				register(root);
+			}
+		}
+	}
+	ArrayList<Path> awaitChanges() throws IOException, InterruptedException {
+		HashSet<Path> changes = new HashSet<>();
+		WatchKey key = service.take();
+		while(key != null) {
+			collect(key, changes);
+			key = service.poll(quietMillis, TimeUnit.MILLISECONDS);
+		}
+		return changes.toArrayList().sort();
+	}
+	@Override
+	public void close() throws IOException {
+		service.close();
+	}
+	private void collect(WatchKey key, HashSet<Path> changes) throws IOException {
+		Path folder = keys.get(key);
+		for(WatchEvent<?> event : key.pollEvents()) {
+			if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				System.out.println("\nToo many changes to watch, rescanning " + roots.size() + " folder(s)");
+				for(Path root : roots) {
+					if(Files.isDirectory(root)) {
+						changes.addAll(Files.walk(root).filter(Files::isRegularFile).toList());
+					}
+				}
+				continue;
+			}
+			if(folder == null) {
+				continue;
+			}
+			Path path = folder.resolve((Path) event.context());
+			if(event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+				register(path);
+				changes.addAll(Files.walk(path).filter(Files::isRegularFile).toList());
+			} else {
+				changes.add(path);
+			}
+		}
+		if(key.reset() == false) {
+			keys.remove(key);
+		}
+	}
+	private void register(Path root) throws IOException {
+		for(Path folder : Files.walk(root).filter(Files::isDirectory).toList()) {
+			WatchKey key =
+				folder.register(
+					service,
+					StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+			keys.put(key, folder);
+		}
+	}
+}
@@ -7,25 +7,40 @@ import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import project.BuildTrace;
+import project.BundleIndex;
+import project.BundleIndex.Bundle;
+import project.ContentIndex;
 import project.Feature;
-import project.Plugin;
+import project.ObjectStore;
 import project.Snapshot;
+import project.SnapshotJournal;
 import utils.lists.ArrayList;
 import utils.lists.Arrays;
 import utils.lists.Files;
 import utils.lists.HashMap;
+import utils.lists.HashSet;
 import utils.lists.List;
 import utils.lists.Map;
 import utils.lists.Pair;
 import utils.lists.Paths;
 import utils.lists.PosixFilePermissions;
 import utils.streams.functions.ExDoubleConsumer;
+import utils.streams.functions.IOFunction;
 import utils.streams2.IOStream;
 
 public class MainBuildIDE {
@@ -58,14 +73,43 @@ public class MainBuildIDE {
 	private static final String WORKSPACE = ENV.getOrDefault("workspace", "");
 	private static final String OSGI_OS = ENV.getOrDefault("osgios", "win32");
 	private static final String OSGI_WS = ENV.getOrDefault("osgiws", "win32");
+	private static final String OSGI_ARCH = "x86_64";
+	private static final Pattern PLATFORM_TERM = Pattern.compile("(\\(!)?\\(osgi\\.(os|ws|arch)=([^()]+)\\)");
+	private static final List<Pair<String, String>> PLATFORMS = parsePlatforms(ENV.getOrDefault("platforms", ""));
+	private static final boolean LINK_TARGETS = Boolean.parseBoolean(ENV.getOrDefault("objects", "false"));
+	private static final long LINK_THRESHOLD = 64 * 1024;
+	private static final String TRACE_FILE = ENV.getOrDefault("trace", "");
+	private static final BuildTrace TRACE = TRACE_FILE.isEmpty() ? BuildTrace.DISABLED : new BuildTrace();
+	private static final long WATCH_QUIET_MILLIS = Long.parseLong(ENV.getOrDefault("watchquiet", "500"));
+	private static final int PARALLELISM =
+		Integer.parseInt(ENV.getOrDefault("parallelism", Integer.toString(Runtime.getRuntime().availableProcessors())));
+	private static final long BUFFER_BUDGET =
+		Long.parseLong(ENV.getOrDefault("buffermb", Long.toString(Runtime.getRuntime().maxMemory() / 4 >> 20))) << 20;
 	private static final Path CURRENT_FOLDER = Paths.get("").toAbsolutePath();
 	private static final Path ROOT = CURRENT_FOLDER.getParent().getParent();
 	private static final Path IDE_ZIP = CURRENT_FOLDER.resolve("target/ide.zip");
+	private static final Path IDE_ZIP_COMPACTING = CURRENT_FOLDER.resolve("target/ide-compacting.zip");
+	private static final Path IDE_ZIP_COMPACTED = CURRENT_FOLDER.resolve("target/ide-compacted.zip");
+	private static final Path IDE_COMPACTING_POSITION = CURRENT_FOLDER.resolve("target/ide-compacting.position");
+	private static final Path IDE_COMPACTED_POSITION = CURRENT_FOLDER.resolve("target/ide-compacted.position");
+	private static final int PROMOTION_ATTEMPTS = 3;
+	private static final SnapshotJournal IDE_JOURNAL = new SnapshotJournal(CURRENT_FOLDER.resolve("target/ide.journal"));
+	private static final int JOURNAL_COMPACTION_RATIO = 4;
+	private static final ContentIndex FILE_HASHES = new ContentIndex(CURRENT_FOLDER.resolve("target/ide.hashes"));
+	private static final BundleIndex BUNDLES = new BundleIndex(CURRENT_FOLDER.resolve("target/ide.bundles"));
+	private static final ObjectStore OBJECTS = new ObjectStore(CURRENT_FOLDER.resolve("target/objects"), LINK_THRESHOLD);
+	private static final P2UnitCache PROFILE_UNITS = new P2UnitCache(CURRENT_FOLDER.resolve("target/ide-profile.units"));
 	private static final Path TARGET_IDE1 = CURRENT_FOLDER.resolve("target/ide-1");
 	private static final Path TARGET_IDE2 = CURRENT_FOLDER.resolve("target/ide-2");
 	private static final Path TARGET_IDE3 = CURRENT_FOLDER.resolve("target/ide-99");
-	private static final Path TARGET_IDE = determineUnusedTarget();
-	private static Snapshot snapshot = new Snapshot(NOW.toInstant()).addPathRemapper(MainBuildIDE::remapP2);
+	private static Path TARGET_IDE = determineUnusedTarget();
+	private static Snapshot snapshot = new Snapshot(NOW.toInstant()).setParallelism(PARALLELISM)
+		.setBufferBudget(BUFFER_BUDGET)
+		.setSpillFolder(CURRENT_FOLDER.resolve("target"))
+		.setTargetIndex(FILE_HASHES)
+		.setObjectStore(LINK_TARGETS ? OBJECTS : null)
+		.setTrace(TRACE)
+		.addPathRemapper(MainBuildIDE::remapP2);
 	private static long timeMillis;
 	private static String oldPhase;
 	private static int phaseCounter;
@@ -78,56 +122,186 @@ public class MainBuildIDE {
 	private static Instant launcherModified = NOW.toInstant();
 	private static String PROFILE_TIME = String.valueOf(platformModified.toEpochMilli());
 	private static HashMap<Path, HashMap<String, String>> pluginToManifest;
+	private static Thread compaction;
+	private static boolean snapshotLoaded;
 
 	public static void main(String[] args) throws IOException, URISyntaxException, InterruptedException {
 		fullBuild = "test".equals(BUILD_TYPE) || "full".equals(BUILD_TYPE);
+		String workspace = "".equals(WORKSPACE) ? null : new File(new URI(WORKSPACE)).toPath().toString();
+		if("watch".equals(BUILD_TYPE)) {
+			watch(workspace);
+			return;
+		}
 		System.out.print("IDE " + BUILD_TYPE + " build, ");
 		ArrayList<Path> changes = reportedChanges();
 		System.out.println(changes.size() + " file(s) to go, target is " + TARGET_IDE);
 		if(changes.isEmpty()) {
 			return;
 		}
-		String workspace = "".equals(WORKSPACE) ? null : new File(new URI(WORKSPACE)).toPath().toString();
-		updateTime();
-		mergeChanges(changes);
-		updateFiles(workspace);
-		writeSnapshot();
-		writeIDE();
+		snapshot.journalTo(IDE_JOURNAL);
+		deleteSpillFiles();
+		loadCaches();
+		build(changes, workspace);
+	}
+	private static void watch(String workspace) throws IOException, InterruptedException {
+		System.out.println("IDE watch build, target is " + TARGET_IDE);
+		readSnapshot();
+		snapshot.journalTo(IDE_JOURNAL);
+		deleteSpillFiles();
+		loadCaches();
+		ArrayList<Path> changes = snapshotLoaded ? ArrayList.of() : streamAllFiles(ROOT);
+		fullBuild = snapshotLoaded == false;
+		try(ChangeWatcher watcher = new ChangeWatcher(watchedRoots(ROOT), WATCH_QUIET_MILLIS)) {
+			while(true) {
+				changes.filter(p -> p.startsWith(ROOT) && isWatchedFile(ROOT.relativize(p)));
+				if(changes.notEmpty()) {
+					System.out.print("\n" + changes.size() + " file(s) to go");
+					Path target = determineUnusedTarget();
+					if(target.equals(TARGET_IDE) == false) {
+						System.out.print(", target is now " + target);
+						TARGET_IDE = target;
+					}
+					try {
+						snapshot.setNow(Instant.now());
+						build(changes, workspace);
+						fullBuild = false;
+					} catch(IOException | RuntimeException e) {
+						System.out.println("\nBuild failed, waiting for more changes:");
+						e.printStackTrace(System.out);
+					}
+					System.out.println("\nWatching for changes");
+				}
+				changes = watcher.awaitChanges();
+			}
+		}
+	}
+	private static void build(ArrayList<Path> changes, String workspace) throws IOException, InterruptedException {
+		try(BuildTrace.Span span = TRACE.begin("build", BUILD_TYPE)) {
+			span.add("changes", changes.size());
+			updateTime();
+			awaitCompaction();
+			mergeChanges(changes);
+			updateFiles(workspace);
+			writeSnapshot();
+			writeIDE();
+			awaitCompaction();
+			promoteCompactedSnapshot();
+			FILE_HASHES.save();
+			BUNDLES.save();
+			PROFILE_UNITS.save();
+			pruneObjects();
+		} finally {
+			writeTrace();
+		}
+	}
+	private static void pruneObjects() throws IOException {
+		if(LINK_TARGETS && fullBuild) {
+			int removed = OBJECTS.prune(FILE_HASHES.digests());
+			if(removed > 0) {
+				System.out.printf("%n(%,d unused object(s) removed)", removed);
+			}
+		}
+	}
+	private static void writeTrace() {
+		if(TRACE.isEnabled()) {
+			try {
+				TRACE.write(Paths.get(TRACE_FILE));
+			} catch(IOException e) {
+				System.out.println("\nCould not write build trace to " + TRACE_FILE + ": " + e.getMessage());
+			}
+		}
+	}
+	private static void deleteSpillFiles() throws IOException {
+		int deleted = snapshot.deleteSpillFiles();
+		if(deleted > 0) {
+			System.out.printf("(%,d stale spill file(s) removed)%n", deleted);
+		}
+	}
+	private static void loadCaches() {
+		try {
+			FILE_HASHES.load();
+		} catch(IOException e) {
+			System.out.println("\nIgnoring unreadable file hashes: " + e.getMessage());
+		}
+		try {
+			BUNDLES.load();
+		} catch(IOException e) {
+			System.out.println("\nIgnoring unreadable bundle index: " + e.getMessage());
+		}
+		try {
+			PROFILE_UNITS.load();
+		} catch(IOException e) {
+			System.out.println("\nIgnoring unreadable p2 unit cache: " + e.getMessage());
+		}
+	}
+	private static void updateModified(Instant inputs) {
+		pluginsModified = inputs;
+		featuresModified = inputs;
+		p2Modified = inputs;
+		platformModified = inputs;
+		sourceModified = inputs;
+		launcherModified = inputs;
+		PROFILE_TIME = String.valueOf(platformModified.toEpochMilli());
 	}
 	static void initializeFromSnapshot() throws IOException {
 		readSnapshot();
 		updateFiles(null);
 	}
+	static Snapshot getSnapshot() {
+		return snapshot;
+	}
 	private static void updateFiles(String workspace) throws IOException {
-		try {
+		try(BuildTrace.Span span = TRACE.begin("phase", "generate")) {
+			Instant inputs = snapshot.getModified(Paths.get(""));
+			if(inputs != null) {
+				updateModified(inputs);
+			}
 			snapshot.copyFiles(
 				"plugins/org.eclipse.m2e.maven.indexer/indexer-core-3.1.0.jar/org/apache/maven/index",
 				"plugins/org.eclipse.m2e.maven.indexer/org/apache/maven/index");
 			replacePlaceholders();
 			pluginToManifest = getPluginToManifest();
 			if(workspace != null && isRunningSelfHosted()) {
-				registerFile(ORG_ECLIPSE_UI_IDE_PREFS, orgEclipseUiIdePrefs(workspace), p2Modified);
+				registerFile(ORG_ECLIPSE_UI_IDE_PREFS, t -> orgEclipseUiIdePrefs(workspace), p2Modified);
 			} else {
 				snapshot.removeFile(Paths.get(ORG_ECLIPSE_UI_IDE_PREFS));
 			}
-			registerFile(JVMARGS, jvmargs(), p2Modified);
-			registerFile(BUNDLES_INFO, bundlesInfo(), pluginsModified);
-			registerFile(CONFIG_INI, configIni(), platformModified);
-			registerFile(ECLIPSE_INI, eclipseIni(false), launcherModified);
-			registerFile(MACOS_ECLIPSE_INI, eclipseIni(true), launcherModified);
-			registerFile(PLATFORM_XML, platformXml(), featuresModified);
-			registerFile(SOURCE_INFO, sourceInfo(), sourceModified);
-			registerFile(ARTIFACTS_XML, artifactsXml(), p2Modified);
-			registerFile(DOT_ECLIPSEPRODUCT, dotEclipseproduct(), platformModified);
-			registerFile(
-				PROFILE_GZ,
-				P2ProfileGenerator.profileGz(snapshot, PROFILE_TIME, ECLIPSE_PROFILE_ID, ECLIPSE_PRODUCT_ID),
-				platformModified);
+			registerFile(JVMARGS, t -> jvmargs(OSGI_OS, t), p2Modified);
+			registerFile(BUNDLES_INFO, t -> bundlesInfo(OSGI_OS, OSGI_WS), pluginsModified);
+			registerFile(CONFIG_INI, t -> configIni(OSGI_OS, t), platformModified);
+			registerFile(ECLIPSE_INI, t -> eclipseIni(false, OSGI_OS, OSGI_WS), launcherModified);
+			registerFile(MACOS_ECLIPSE_INI, t -> eclipseIni(true, OSGI_OS, OSGI_WS), launcherModified);
+			registerFile(PLATFORM_XML, MainBuildIDE::platformXml, featuresModified);
+			registerFile(SOURCE_INFO, t -> sourceInfo(), sourceModified);
+			registerFile(ARTIFACTS_XML, MainBuildIDE::artifactsXml, p2Modified);
+			registerFile(DOT_ECLIPSEPRODUCT, t -> dotEclipseproduct(), platformModified);
+			registerFile(PROFILE_GZ, MainBuildIDE::profile, platformModified);
 		} catch(RuntimeException e) {
 			System.out.println("\nProbably transient error generating dynamic files: " + e.getMessage());
 			e.printStackTrace(System.out);
 		}
 	}
+	private static byte[] profile(Instant modified) throws IOException {
+		PROFILE_TIME = String.valueOf(modified.toEpochMilli());
+		return profile("profile", OSGI_OS, OSGI_WS);
+	}
+	private static byte[] profile(String phase, String os, String ws) throws IOException {
+		try(BuildTrace.Span span = TRACE.begin("phase", phase)) {
+			byte[] bytes =
+				P2ProfileGenerator.profileGz(
+					snapshot,
+					PROFILE_UNITS,
+					PROFILE_TIME,
+					ECLIPSE_PROFILE_ID,
+					ECLIPSE_PRODUCT_ID,
+					os,
+					ws);
+			span.add("bytes", bytes.length).add("unitsCached", PROFILE_UNITS.hits()).add(
+				"unitsGenerated",
+				PROFILE_UNITS.misses());
+			return bytes;
+		}
+	}
 	private static byte[] orgEclipseUiIdePrefs(String workspace) {
 		ArrayList<String> lines = new ArrayList<>();
 		String workspacePath = Paths.get(workspace).toString().replace("\\", "\\\\").replace(":", "\\:");
@@ -146,7 +320,7 @@ public class MainBuildIDE {
 			"name=Eclipse Platform\n" + "id=org.eclipse.platform\n" + "version=" + buildID + "\n" + "";
 		return dotEclipseproduct.getBytes(UTF8);
 	}
-	private static byte[] artifactsXml() {
+	private static byte[] artifactsXml(Instant modified) {
 		String artifactsXml =
 			"<?xml version='1.0' encoding='UTF-8'?>\n" +
 			"<?artifactRepository version='1.1.0'?>\n" +
@@ -154,7 +328,7 @@ public class MainBuildIDE {
 			"  <properties size='2'>\n" +
 			"    <property name='p2.system' value='true'/>\n" +
 			"    <property name='p2.timestamp' value='" +
-			p2Modified.toEpochMilli() +
+			modified.toEpochMilli() +
 			"'/>\n" +
 			"  </properties>\n" +
 			"  <mappings size='3'>\n" +
@@ -188,10 +362,10 @@ public class MainBuildIDE {
 		String sourceInfo = String.join("\n", lines);
 		return sourceInfo.getBytes(UTF8);
 	}
-	private static byte[] platformXml() throws IOException {
+	private static byte[] platformXml(Instant modified) throws IOException {
 		ArrayList<String> lines = new ArrayList<>();
 		lines.add("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-		lines.add("<config transient=\"false\" date=\"" + featuresModified.toEpochMilli() + "\">");
+		lines.add("<config transient=\"false\" date=\"" + modified.toEpochMilli() + "\">");
 		lines.add("\t<site enabled=\"true\" updateable=\"true\" policy=\"USER-EXCLUDE\" url=\"platform:/base/\">");
 		for(Path path : snapshot.listFolders(Paths.get("features"))) {
 			Feature feature = snapshot.getFileAsFeature(path);
@@ -211,9 +385,9 @@ public class MainBuildIDE {
 			suffix));
 		lines.add("\t\t</feature>");
 	}
-	private static byte[] eclipseIni(boolean insideEclipseApp) {
+	private static byte[] eclipseIni(boolean insideEclipseApp, String os, String ws) {
 		String launcher = getBundleFilename("org.eclipse.equinox.launcher");
-		String launcherName = "org.eclipse.equinox.launcher." + OSGI_OS + "." + OSGI_WS + ".x86_64";
+		String launcherName = "org.eclipse.equinox.launcher." + os + "." + ws + ".x86_64";
 		String launcherLibrary = getBundleFilename(launcherName);
 		ArrayList<String> lines = new ArrayList<>();
 		Path jvmDLLPath = Paths.get(System.getProperty("java.home", "")).resolve("bin/server/jvm.dll");
@@ -239,7 +413,7 @@ public class MainBuildIDE {
 		lines.add("-Dosgi.requiredJavaVersion=1.7");
 		lines.add("-Xms40m");
 		lines.add("-Xmx3500m");
-		if("macosx".equals(OSGI_OS)) {
+		if("macosx".equals(os)) {
 			if(insideEclipseApp) {
 				lines.add("-Xdock:icon=../Resources/Eclipse.icns");
 			} else {
@@ -252,15 +426,15 @@ public class MainBuildIDE {
 		String eclipseIni = String.join(System.lineSeparator(), lines);
 		return eclipseIni.getBytes(UTF8);
 	}
-	private static byte[] configIni() {
-		ZonedDateTime time = ZonedDateTime.ofInstant(platformModified, ZoneId.of("UTC"));
+	private static byte[] configIni(String os, Instant modified) {
+		ZonedDateTime time = ZonedDateTime.ofInstant(modified, ZoneId.of("UTC"));
 		String date = DATE_LONG.format(time);
 		String osgi = getBundleFilename("org.eclipse.osgi");
 		String timestamp = DATE_SHORT.format(time);
 		String buildID = getBundleVersion("org.eclipse.platform").replace("qualifier", timestamp);
 		String simpleConfigurator = getBundleFilename("org.eclipse.equinox.simpleconfigurator");
 		String compatibilityState = getBundleFilename("org.eclipse.osgi.compatibility.state");
-		String documentsPath = "linux".equals(OSGI_OS) ? "" : "/Documents";
+		String documentsPath = "linux".equals(os) ? "" : "/Documents";
 		ArrayList<String> lines = new ArrayList<>();
 		lines.add("#This configuration file was written by: org.eclipse.equinox.internal.frameworkadmin.equinox.EquinoxFwConfigFileParser");
 		lines.add("#" + date);
@@ -311,14 +485,27 @@ public class MainBuildIDE {
 		}
 		return generateBundleIDFromManifest("", manifest);
 	}
-	private static void registerFile(String name, byte[] bytes, Instant modified) throws IOException {
-		snapshot.addFile(Paths.get(name), bytes, modified);
+	private static void registerFile(String name, IOFunction<Instant, byte[]> generator, Instant modified)
+		throws IOException {
+		Path path = Paths.get(name);
+		Instant previous = snapshot.getModified(path);
+		if(previous != null && snapshot.isFile(path)) {
+			byte[] bytes = generator.apply(previous);
+			if(Arrays.equals(bytes, snapshot.getFileAsBytes(path))) {
+				return;
+			}
+			if(previous.equals(modified)) {
+				snapshot.addFile(path, bytes, modified);
+				return;
+			}
+		}
+		snapshot.addFile(path, generator.apply(modified), modified);
 	}
-	private static byte[] jvmargs() {
+	private static byte[] jvmargs(String os, Instant modified) {
 		ArrayList<String> lines = new ArrayList<>();
-		String date = DATE_LONG.format(ZonedDateTime.ofInstant(p2Modified, ZoneId.of("UTC")));
+		String date = DATE_LONG.format(ZonedDateTime.ofInstant(modified, ZoneId.of("UTC")));
 		lines.add("#" + date);
-		if("macosx".equals(OSGI_OS)) {
+		if("macosx".equals(os)) {
 			lines.add("-Xms=40m,40m");
 			lines.add("-Xmx=512m,512m");
 		} else {
@@ -329,19 +516,47 @@ public class MainBuildIDE {
 		String bundlesInfo = String.join("\n", lines);
 		return bundlesInfo.getBytes(UTF8);
 	}
-	private static byte[] bundlesInfo() {
+	private static byte[] bundlesInfo(String os, String ws) {
 		ArrayList<String> lines = new ArrayList<>();
 		lines.add("#version=1");
 		for(Path pluginPath : pluginToManifest.keySet()) {
 			String plugin = pluginPath.getFileName().toString();
 			String suffix = plugin.endsWith(".jar") ? ".jar" : "/";
 			HashMap<String, String> manifest = pluginToManifest.get(pluginPath);
+			if(matchesPlatform(manifest, os, ws) == false) {
+				continue;
+			}
 			addParsedBundleInfoFromManifest(suffix, lines, manifest);
 		}
 		lines.sort().add("");
 		String bundlesInfo = String.join("\n", lines);
 		return bundlesInfo.getBytes(UTF8);
 	}
+	static boolean matchesPlatform(HashMap<String, String> manifest, String os, String ws) {
+		String filter = manifest.get("Eclipse-PlatformFilter");
+		if(filter == null) {
+			return true;
+		}
+		HashSet<String> keys = new HashSet<>();
+		HashSet<String> matched = new HashSet<>();
+		Matcher matcher = PLATFORM_TERM.matcher(filter.replace(" ", ""));
+		while(matcher.find()) {
+			String key = matcher.group(2);
+			String value = "os".equals(key) ? os : "ws".equals(key) ? ws : OSGI_ARCH;
+			boolean equal = value.equals(matcher.group(3));
+			if(matcher.group(1) != null) {
+				if(equal) {
+					return false;
+				}
+				continue;
+			}
+			keys.add(key);
+			if(equal) {
+				matched.add(key);
+			}
+		}
+		return matched.size() == keys.size();
+	}
 	private static void addParsedBundleInfoFromManifest(
 		String suffix,
 		ArrayList<String> lines,
@@ -633,17 +848,100 @@ public class MainBuildIDE {
 		snapshot.replaceFile(toZipPath(key), replace);
 	}
 	private static void writeIDE() throws IOException, InterruptedException {
-		if(fullBuild && Files.isDirectory(TARGET_IDE)) {
+		resetTarget(TARGET_IDE);
+		if(PLATFORMS.isEmpty()) {
+			writeTarget(TARGET_IDE, "target", monitor("target"), new HashMap<>());
+			return;
+		}
+		for(Pair<String, String> platform : PLATFORMS) {
+			resetTarget(platformTarget(platform.lhs, platform.rhs));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(PLATFORMS.size());
+		try {
+			ArrayList<Future<Void>> platforms = new ArrayList<>();
+			for(Pair<String, String> platform : PLATFORMS) {
+				platforms.add(executor.submit(() -> writePlatform(platform.lhs, platform.rhs)));
+			}
+			writeTarget(TARGET_IDE, "target", monitor("target"), new HashMap<>());
+			for(Future<Void> platform : platforms) {
+				try {
+					platform.get();
+				} catch(ExecutionException e) {
+					Throwable cause = e.getCause();
+					if(cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					if(cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					throw new IOException(cause);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	private static Void writePlatform(String os, String ws) throws IOException {
+		HashMap<Path, byte[]> overrides = new HashMap<>();
+		overrides.put(Paths.get(JVMARGS), jvmargs(os, snapshot.getModified(Paths.get(JVMARGS))));
+		overrides.put(Paths.get(CONFIG_INI), configIni(os, snapshot.getModified(Paths.get(CONFIG_INI))));
+		overrides.put(Paths.get(ECLIPSE_INI), eclipseIni(false, os, ws));
+		overrides.put(Paths.get(MACOS_ECLIPSE_INI), eclipseIni(true, os, ws));
+		overrides.put(Paths.get(BUNDLES_INFO), bundlesInfo(os, ws));
+		overrides.put(Paths.get(PROFILE_GZ), profile("profile " + os + "/" + ws, os, ws));
+		Path target = platformTarget(os, ws);
+		writeTarget(target, "target " + os + "/" + ws, d -> {}, overrides);
+		System.out.print("\n" + os + "/" + ws + " target is " + target);
+		return null;
+	}
+	private static <E extends Exception> void writeTarget(
+		Path target,
+		String phase,
+		ExDoubleConsumer<E> monitor,
+		HashMap<Path, byte[]> overrides) throws IOException, E {
+		try(BuildTrace.Span span = TRACE.begin("phase", phase)) {
+			snapshot.write(target, monitor, overrides);
+		}
+		changePermissions(target, "Eclipse.app/Contents/MacOS/eclipse", "rwxr-x---");
+		changePermissions(target, "eclipse", "rwxr-xr-x");
+		changePermissions(target, "icon.xpm", "rwxr-xr-x");
+	}
+	private static void resetTarget(Path target) throws IOException {
+		if(fullBuild && Files.isDirectory(target)) {
 			FileTime epoch = FileTime.from(Instant.EPOCH);
-			Files.walk(TARGET_IDE).forEach(p -> Files.setLastModifiedTime(p, epoch));
+			Files.walk(target).forEach(p -> resetFile(p, epoch));
+		}
+	}
+	private static void resetFile(Path path, FileTime epoch) throws IOException {
+		if(LINK_TARGETS && Files.isRegularFile(path) && OBJECTS.accepts(Files.size(path))) {
+			FILE_HASHES.remove(path);
+			Files.delete(path);
+			return;
+		}
+		FILE_HASHES.setLastModifiedTime(path, epoch);
+	}
+	private static Path platformTarget(String os, String ws) {
+		return CURRENT_FOLDER.resolve("target/ide-" + os + "." + ws);
+	}
+	private static List<Pair<String, String>> parsePlatforms(String platforms) {
+		ArrayList<Pair<String, String>> list = new ArrayList<>();
+		for(String platform : platforms.split(",")) {
+			String trimmed = platform.trim();
+			if(trimmed.isEmpty()) {
+				continue;
+			}
+			String[] split = trimmed.split("/");
+			if(split.length != 2) {
+				throw new IllegalArgumentException("Platform must be given as os/ws, was " + trimmed);
+			}
+			if(split[0].equals(OSGI_OS) == false || split[1].equals(OSGI_WS) == false) {
+				list.add(new Pair<>(split[0], split[1]));
+			}
 		}
-		snapshot.write(TARGET_IDE, monitor("target"));
-		changePermissions("Eclipse.app/Contents/MacOS/eclipse", "rwxr-x---");
-		changePermissions("eclipse", "rwxr-xr-x");
-		changePermissions("icon.xpm", "rwxr-xr-x");
+		return list.toList();
 	}
-	private static void changePermissions(String other, String permissions) {
-		Path path = TARGET_IDE.resolve(other);
+	private static void changePermissions(Path target, String other, String permissions) {
+		Path path = target.resolve(other);
 		if(Files.isRegularFile(path)) {
 			try {
 				Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(permissions));
@@ -684,14 +982,24 @@ public class MainBuildIDE {
 		String name = symbolicName.split(";")[0].trim();
 		return name + "_" + version + suffix;
 	}
+	static HashMap<Path, Bundle> getBundles() throws IOException {
+		return getBundles(snapshot);
+	}
+	static HashMap<Path, Bundle> getBundles(Snapshot source) throws IOException {
+		try(BuildTrace.Span span = TRACE.begin("phase", "manifests")) {
+			HashMap<Path, Bundle> bundles = BUNDLES.update(source);
+			span.add("bundles", bundles.size()).add("parsed", BUNDLES.parsedCount());
+			return bundles;
+		}
+	}
 	static HashMap<Path, HashMap<String, String>> getPluginToManifest() throws IOException {
+		return getPluginToManifest(getBundles());
+	}
+	static HashMap<Path, HashMap<String, String>> getPluginToManifest(HashMap<Path, Bundle> bundles) {
 		HashMap<Path, HashMap<String, String>> map = new HashMap<>();
-		for(Path pluginPath : snapshot.listAll(Paths.get("plugins"))) {
-			Plugin plugin = snapshot.getFileAsPlugin(pluginPath);
-			if(plugin != null &&
-			plugin.manifest.containsKey("Bundle-SymbolicName") &&
-			plugin.manifest.containsKey("Bundle-Version")) {
-				map.put(fromZipPath(pluginPath), plugin.manifest);
+		for(HashMap.Entry<Path, Bundle> entry : bundles) {
+			if(entry.rhs.isComplete()) {
+				map.put(fromZipPath(entry.lhs), entry.rhs.manifest);
 			}
 		}
 		return map;
@@ -700,13 +1008,97 @@ public class MainBuildIDE {
 		if(snapshot.notFound(Paths.get("dropins"))) {
 			snapshot.addFolder(Paths.get("dropins"), NOW.toInstant());
 		}
-		snapshot.write(IDE_ZIP, monitor("cache"));
+		try(BuildTrace.Span span = TRACE.begin("phase", "cache")) {
+			if(fullBuild || snapshotLoaded == false) {
+				Files.deleteIfExists(IDE_COMPACTED_POSITION);
+				Files.deleteIfExists(IDE_ZIP_COMPACTED);
+				snapshot.write(IDE_ZIP, monitor("cache"));
+				IDE_JOURNAL.delete();
+				snapshotLoaded = true;
+				return;
+			}
+			span.add("journalRecords", IDE_JOURNAL.pendingCount());
+			IDE_JOURNAL.flush();
+			long journalSize = IDE_JOURNAL.size();
+			span.add("journalBytes", journalSize);
+			if(isCompactionPending()) {
+				return;
+			}
+			if(journalSize * JOURNAL_COMPACTION_RATIO > Files.size(IDE_ZIP)) {
+				long position = IDE_JOURNAL.position();
+				compaction = new Thread(() -> compactSnapshot(position), "Snapshot compaction");
+				compaction.start();
+			}
+		}
+	}
+	private static boolean isCompactionPending() {
+		return Files.exists(IDE_ZIP_COMPACTED) || Files.exists(IDE_COMPACTED_POSITION);
+	}
+	private static void compactSnapshot(long position) {
+		try(BuildTrace.Span span = TRACE.begin("phase", "compaction")) {
+			span.add("journalPosition", position);
+			snapshot.write(IDE_ZIP_COMPACTING);
+			Files.write(IDE_COMPACTING_POSITION, Long.toString(position).getBytes(StandardCharsets.US_ASCII));
+			Files.move(IDE_ZIP_COMPACTING, IDE_ZIP_COMPACTED, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(IDE_COMPACTING_POSITION, IDE_COMPACTED_POSITION, StandardCopyOption.REPLACE_EXISTING);
+		} catch(IOException e) {
+			System.out.println("\nCould not compact snapshot, keeping the journal:");
+			e.printStackTrace(System.out);
+		}
+	}
+	private static void promoteCompactedSnapshot() {
+		try {
+			if(Files.isRegularFile(IDE_ZIP_COMPACTED)) {
+				if(Files.isRegularFile(IDE_COMPACTED_POSITION) == false) {
+					System.out.println("\nDiscarding compacted snapshot without a journal position");
+					Files.delete(IDE_ZIP_COMPACTED);
+					return;
+				}
+				if(snapshotLoaded) {
+					snapshot.relocate(IDE_ZIP_COMPACTED);
+				}
+				replaceSnapshot();
+			}
+			if(Files.isRegularFile(IDE_COMPACTED_POSITION)) {
+				String position = new String(Files.readAllBytes(IDE_COMPACTED_POSITION), StandardCharsets.US_ASCII);
+				IDE_JOURNAL.discardUpTo(Long.parseLong(position.trim()));
+				Files.delete(IDE_COMPACTED_POSITION);
+			}
+		} catch(IOException e) {
+			System.out.println("\nCompacted snapshot will be taken into use later: " + e.getMessage());
+		}
+	}
+	private static void replaceSnapshot() throws IOException {
+		for(int attempt = 1;; attempt++) {
+			try {
+				Files.move(IDE_ZIP_COMPACTED, IDE_ZIP, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				return;
+			} catch(IOException e) {
+				if(attempt == PROMOTION_ATTEMPTS) {
+					throw e;
+				}
+				System.gc();
+			}
+		}
+	}
+	private static void awaitCompaction() throws InterruptedException {
+		if(compaction != null) {
+			compaction.join();
+			compaction = null;
+		}
 	}
 	private static ExDoubleConsumer<InterruptedException> monitor(String phase) {
 		return d -> reportTime(phase, (int) (1000 * d), 1000);
 	}
 	private static void mergeChanges(ArrayList<Path> changes) throws IOException, InterruptedException {
+		try(BuildTrace.Span span = TRACE.begin("phase", "changes")) {
+			mergeChanges(changes, span);
+		}
+	}
+	private static void mergeChanges(ArrayList<Path> changes, BuildTrace.Span span)
+		throws IOException, InterruptedException {
 		long bytesRead = 0;
+		int unchanged = 0;
 		int total = changes.size();
 		int count = 0;
 		for(Path next : changes) {
@@ -717,11 +1109,25 @@ public class MainBuildIDE {
 					Path target = toCopyOperationTarget(path);
 					if(Files.isRegularFile(next)) {
 						Path updatedFile = ROOT.resolve(path);
-						Instant modified = Files.getLastModifiedTime(updatedFile).toInstant();
+						BasicFileAttributes attributes = Files.readAttributes(updatedFile, BasicFileAttributes.class);
+						boolean found = snapshot.isFound(toZipPath(target));
+						if(found && FILE_HASHES.isUnchanged(updatedFile, attributes)) {
+							unchanged++;
+							continue;
+						}
+						Instant modified = attributes.lastModifiedTime().toInstant();
 						byte[] bytes = Files.readAllBytes(updatedFile);
 						bytesRead += bytes.length;
+						long hash = ContentIndex.hash(bytes);
+						boolean same = found && FILE_HASHES.hasContent(updatedFile, bytes.length, hash);
+						FILE_HASHES.put(updatedFile, bytes.length, attributes.lastModifiedTime(), hash);
+						if(same) {
+							unchanged++;
+							continue;
+						}
 						snapshot.addFile(toZipPath(target), bytes, modified);
 					} else {
+						FILE_HASHES.remove(next);
 						snapshot.removeFile(toZipPath(target));
 					}
 				}
@@ -730,11 +1136,18 @@ public class MainBuildIDE {
 		if(bytesRead > 10 * 1024 * 1024) {
 			System.out.printf("%n(done reading %,d bytes)", bytesRead);
 		}
+		if(unchanged > 0) {
+			System.out.printf("%n(%,d unchanged file(s) skipped)", unchanged);
+		}
+		span.add("files", total).add("bytesRead", bytesRead).add("unchanged", unchanged);
 	}
 	private static void readSnapshot() {
+		promoteCompactedSnapshot();
 		if(Files.isRegularFile(IDE_ZIP)) {
-			try {
-				snapshot.read(IDE_ZIP);
+			try(BuildTrace.Span span = TRACE.begin("phase", "read")) {
+				snapshot.readLazily(IDE_ZIP);
+				snapshot.replay(IDE_JOURNAL);
+				snapshotLoaded = true;
 			} catch(IOException e) {
 				snapshot.clear();
 				System.out.println("Error reading snapshot:");
@@ -782,6 +1195,26 @@ public class MainBuildIDE {
 				folders.addAll(projectBins);
 			}
 		}
+		folders.addAll(watchedLibraries(root));
+		ArrayList<Path> all = new ArrayList<>(folders.size() * 100);
+		for(Path folder : folders) {
+			all.addAll(Files.walk(folder).filter(Files::isRegularFile).toList());
+		}
+		return all;
+	}
+	private static ArrayList<Path> watchedRoots(Path root) throws IOException {
+		ArrayList<Path> folders = new ArrayList<>();
+		for(Path project : Files.list(root.resolve("projects")).filter(Files::isDirectory).toList()) {
+			Path projectBin = project.resolve("bin");
+			if(Files.isDirectory(projectBin)) {
+				folders.add(projectBin);
+			}
+		}
+		folders.addAll(watchedLibraries(root));
+		return folders;
+	}
+	private static ArrayList<Path> watchedLibraries(Path root) {
+		ArrayList<Path> folders = new ArrayList<>();
 		for(String template : Arrays.asList("templates_3.0", "templates_3.1", "templates_3.3", "templates_3.5")) {
 			Path folder = root.resolve("libraries/eclipse.pde.ui/ui/org.eclipse.pde.ui.templates").resolve(template);
 			if(Files.isDirectory(folder)) {
@@ -792,11 +1225,7 @@ public class MainBuildIDE {
 		folders.add(root.resolve("libraries/eclipse.jdt.core/org.eclipse.jdt.annotation/src"));
 		folders.add(root.resolve("libraries/orbit-sources/com.google.gwt.servlet/com"));
 		folders.add(root.resolve("projects/IDE-all-extras/extras"));
-		ArrayList<Path> all = new ArrayList<>(folders.size() * 100);
-		for(Path folder : folders) {
-			all.addAll(Files.walk(folder).filter(Files::isRegularFile).toList());
-		}
-		return all;
+		return folders;
 	}
 	private static boolean isWatchedFile(Path path) {
 		if(path.getNameCount() < 5) {
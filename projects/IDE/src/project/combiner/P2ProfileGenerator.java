@@ -1,14 +1,21 @@
 package project.combiner;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.Comparator;
 import java.util.Optional;
+import java.util.jar.JarFile;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
+import project.BundleIndex.Bundle;
+import project.ContentIndex;
 import project.Feature;
 import project.Feature.Import;
 import project.Plugin;
@@ -28,6 +35,12 @@ import utils.streams2.Streams;
 class P2ProfileGenerator {
 	private static final Charset UTF8 = StandardCharsets.UTF_8;
 	private static Snapshot snapshot;
+	private static HashMap<Path, Bundle> bundles;
+	private static final String ARCH = "x86_64";
+	private static final String WIN32_ENVIRONMENT = "win32.win32." + ARCH;
+	private static final String WIN32_FILTER = "(&amp;(osgi.arch=" + ARCH + ")(osgi.os=win32)(osgi.ws=win32))";
+	private static String environment = WIN32_ENVIRONMENT;
+	private static String environmentFilter = WIN32_FILTER;
 
 	public static void main(String[] args) throws IOException {
 		Path officialVersion = Paths.get(System.getProperty("user.home", ""), "evening");
@@ -41,9 +54,19 @@ class P2ProfileGenerator {
 		Files.write(Paths.get("1411396396819-gen.profile"), version2, UTF8);
 		compare(version1, version2);
 	}
-	static byte[] profileGz(Snapshot currentSnapshot, String timestamp, String profileID, String productID)
-		throws IOException {
+	static synchronized byte[] profileGz(
+		Snapshot currentSnapshot,
+		P2UnitCache units,
+		String timestamp,
+		String profileID,
+		String productID,
+		String os,
+		String ws) throws IOException {
 		snapshot = currentSnapshot;
+		environment = ws + "." + os + "." + ARCH;
+		environmentFilter = "(&amp;(osgi.arch=" + ARCH + ")(osgi.os=" + os + ")(osgi.ws=" + ws + "))";
+		ByteArrayOutputStream bout = new ByteArrayOutputStream(1024 * 1024);
+		Writer out = new BufferedWriter(new OutputStreamWriter(bout, UTF8));
 		String ECLIPSE_PROFILE_ID = profileID;
 		String ECLIPSE_PRODUCT_ID = productID;
 		String INSTALL_FOLDER =
@@ -51,14 +74,14 @@ class P2ProfileGenerator {
 			ECLIPSE_PRODUCT_ID +
 			"/target/products/" +
 			ECLIPSE_PROFILE_ID +
-			"/win32/win32/x86_64/eclipse";
+			"/" + ws + "/" + os + "/" + ARCH + "/eclipse";
 		INSTALL_FOLDER = "D:\\evening";
 		String cache =
 			"/jobs/genie.technology.packaging/mars.epp-tycho-build/workspace/org.eclipse.epp.packages/packages/" +
 			ECLIPSE_PRODUCT_ID +
 			"/target/products/" +
 			ECLIPSE_PROFILE_ID +
-			"/win32/win32/x86_64/eclipse";
+			"/" + ws + "/" + os + "/" + ARCH + "/eclipse";
 		cache = "D:\\evening";
 		String cacheRoot = cache.replace('\\', '/');
 		String cacheExtensions =
@@ -77,13 +100,13 @@ class P2ProfileGenerator {
 				"    <property name='org.eclipse.equinox.p2.cache' value='" + cache + "'/>",
 				"    <property name='org.eclipse.update.install.features' value='true'/>",
 				"    <property name='org.eclipse.equinox.p2.roaming' value='true'/>",
-				"    <property name='org.eclipse.equinox.p2.environments' value='osgi.nl=en_US,osgi.ws=win32,osgi.arch=x86_64,osgi.os=win32'/>",
+				"    <property name='org.eclipse.equinox.p2.environments' value='osgi.nl=en_US,osgi.ws=" + ws + ",osgi.arch=" + ARCH + ",osgi.os=" + os + "'/>",
 				"    <property name='eclipse.touchpoint.launcherName' value='eclipse'/>",
 				"    <property name='org.eclipse.equinox.p2.cache.extensions' value='" + cacheExtensions + "'/>",
 				"  </properties>");
-		HashMap<Path, HashMap<String, String>> pluginToManifest = MainBuildIDE.getPluginToManifest();
-		HashMap<Path, Map<String, String>> pluginToProperties = getPluginToProperties();
-		HashMap<Path, Map<String, String>> pluginToP2Inf = getPluginToP2Inf();
+		flush(lines, out);
+		bundles = MainBuildIDE.getBundles(snapshot);
+		HashMap<Path, HashMap<String, String>> pluginToManifest = MainBuildIDE.getPluginToManifest(bundles);
 		Path configJrePluginPath = fromZipPath("plugins/config.a.jre.javase");
 		Path jrePluginPath = fromZipPath("plugins/a.jre.javase");
 		Path platform_rootPluginPath = fromZipPath("plugins/org.eclipse.platform_root");
@@ -104,6 +127,7 @@ class P2ProfileGenerator {
 				pluginPath.getFileName().toString().replace(".jar", ""),
 				extractVersion(pluginPath, pluginToManifest));
 		}
+		pluginPaths.removeIf(p -> MainBuildIDE.matchesPlatform(pluginToManifest.get(p), os, ws) == false);
 		pluginPaths.addAll(
 			configJrePluginPath,
 			jrePluginPath,
@@ -181,15 +205,26 @@ class P2ProfileGenerator {
 			} else if(features.containsKey(pluginPath)) {
 				addFeatureUnit(lines, features.get(pluginPath), pluginPath.getFileName().toString());
 			} else {
-				HashMap<String, String> manifest = pluginToManifest.get(pluginPath);
-				Map<String, String> props = pluginToProperties.get(pluginPath);
-				Map<String, String> p2Inf = pluginToP2Inf.get(pluginPath);
-				addPluginUnit(pluginPath, lines, props, p2Inf, manifest);
+				long key = unitKey(pluginPath);
+				List<String> unit = units.get(key);
+				if(unit == null) {
+					HashMap<String, String> manifest = pluginToManifest.get(pluginPath);
+					Map<String, String> props = getPluginProperties(pluginPath);
+					Map<String, String> p2Inf = getPluginP2Inf(pluginPath);
+					ArrayList<String> unitLines = new ArrayList<>();
+					addPluginUnit(pluginPath, unitLines, props, p2Inf, manifest);
+					unit = unitLines.toList();
+				}
+				units.put(key, unit);
+				lines.addAll(unit);
 			}
+			flush(lines, out);
 		}
+		units.retainUsed();
 		unitsClose(lines);
 		iusPropertiesOpen(lines, pluginPaths.size());
 		for(Path plugin : pluginPaths) {
+			flush(lines, out);
 			String s1 = plugin.getFileName().toString();
 			String s2 = s1.replace(".feature.group", "");
 			String s3 = s2.replace(".feature.jar", "");
@@ -684,9 +719,31 @@ class P2ProfileGenerator {
 			}
 		}
 		iusPropertiesClose(lines);
-		lines.addAll("</profile>", "");
-		String profileGz = String.join("\n", lines);
-		return profileGz.getBytes(UTF8);
+		lines.add("</profile>");
+		flush(lines, out);
+		out.close();
+		return bout.toByteArray();
+	}
+	private static void flush(ArrayList<String> lines, Writer out) throws IOException {
+		for(String line : lines) {
+			out.write(line);
+			out.write('\n');
+		}
+		lines.clear();
+	}
+	private static long unitKey(Path pluginPath) throws IOException {
+		long key = ContentIndex.hash(pluginPath.toString().getBytes(UTF8));
+		key = mix(key, snapshot.getFileAsBytes(pluginPath.resolve(JarFile.MANIFEST_NAME)));
+		key = mix(key, snapshot.getFileAsBytes(pluginPath.resolve("META-INF/p2.inf")));
+		Path pomProperties = findPomProperties(pluginPath);
+		key = mix(key, pomProperties != null ? snapshot.getFileAsBytes(pomProperties) : null);
+		Bundle bundle = bundles.get(pluginPath);
+		Path localization = bundle != null ? bundle.localization : null;
+		key = mix(key, localization != null ? snapshot.getFileAsBytes(localization) : null);
+		return key;
+	}
+	private static long mix(long key, byte[] bytes) {
+		return key * 0x9E3779B97F4A7C15L ^ (bytes != null ? ContentIndex.hash(bytes) : -1L);
 	}
 	private static List<String> replaceVersions(
 		Path pluginPath,
@@ -709,7 +766,7 @@ class P2ProfileGenerator {
 					"3.3.300.v20140518-1928",
 					updateConfiguratorPlugin.version).replace("3.6.200.v20140819-0835", equinoxCommonPlugin.version).replace(
 					"1.4.200.v20131126-2331",
-					equinoxDSPlugin.version));
+					equinoxDSPlugin.version).replace(WIN32_ENVIRONMENT, environment).replace(WIN32_FILTER, environmentFilter));
 		for(String string : list) {
 			if(string.contains(".v20")) {
 				throw new IllegalStateException("Placeholder " + string + " still in " + pluginPath);
@@ -848,16 +905,16 @@ class P2ProfileGenerator {
 				unitClose(lines);
 				break;
 			case TOOLINGORG_ECLIPSE_PLATFORM_IDE_CONFIG_WIN32_WIN32_X86_64:
-				unitOpen(lines, "toolingorg.eclipse.platform.ide.config.win32.win32.x86_64", version, false);
+				unitOpen(lines, "toolingorg.eclipse.platform.ide.config." + environment, version, false);
 				providesOpen(lines, 2);
 				provided(
 					lines,
 					"org.eclipse.equinox.p2.iu",
-					"toolingorg.eclipse.platform.ide.config.win32.win32.x86_64",
+					"toolingorg.eclipse.platform.ide.config." + environment,
 					version);
 				provided(lines, "toolingorg.eclipse.platform.ide", "org.eclipse.platform.ide.config", version);
 				providesClose(lines);
-				filter(lines, "(&amp;(osgi.arch=x86_64)(osgi.os=win32)(osgi.ws=win32))");
+				filter(lines, environmentFilter);
 				touchpoint(lines, "org.eclipse.equinox.p2.osgi", "1.0.0");
 				touchpointDataOpen(lines, 1);
 				instructionsOpen(lines, 2);
@@ -1021,20 +1078,20 @@ class P2ProfileGenerator {
 				unitClose(lines);
 				break;
 			case TOOLINGORG_ECLIPSE_PLATFORM_IDE_EXECUTABLE_WIN32_WIN32_X86_64:
-				unitOpen(lines, "toolingorg.eclipse.platform.ide.executable.win32.win32.x86_64", version, false);
+				unitOpen(lines, "toolingorg.eclipse.platform.ide.executable." + environment, version, false);
 				hostRequirementsOpen(lines, 1);
-				required(lines, "org.eclipse.platform.ide.executable.win32.win32.x86_64", range);
+				required(lines, "org.eclipse.platform.ide.executable." + environment, range);
 				hostRequirementsClose(lines);
 				propertiesOpen(lines, 1);
 				property(lines, "org.eclipse.equinox.p2.type.fragment", "true");
 				propertiesClose(lines);
 				providesOpen(lines, 1);
-				provided(lines, "toolingorg.eclipse.platform.ide.executable.win32.win32.x86_64", version);
+				provided(lines, "toolingorg.eclipse.platform.ide.executable." + environment, version);
 				providesClose(lines);
 				requiresOpen(lines, 1);
-				required(lines, "org.eclipse.platform.ide.executable.win32.win32.x86_64", range);
+				required(lines, "org.eclipse.platform.ide.executable." + environment, range);
 				requiresClose(lines);
-				filter(lines, "(&amp;(osgi.arch=x86_64)(osgi.os=win32)(osgi.ws=win32))");
+				filter(lines, environmentFilter);
 				touchpoint(lines, "org.eclipse.equinox.p2.native", "1.0.0");
 				touchpointDataOpen(lines, 1);
 				instructionsOpen(lines, 2);
@@ -1045,12 +1102,12 @@ class P2ProfileGenerator {
 				unitClose(lines);
 				break;
 			case TOOLINGORG_ECLIPSE_PLATFORM_IDE_INI_WIN32_WIN32_X86_64:
-				unitOpen(lines, "toolingorg.eclipse.platform.ide.ini.win32.win32.x86_64", version, false);
+				unitOpen(lines, "toolingorg.eclipse.platform.ide.ini." + environment, version, false);
 				providesOpen(lines, 2);
-				provided(lines, "toolingorg.eclipse.platform.ide.ini.win32.win32.x86_64", version);
+				provided(lines, "toolingorg.eclipse.platform.ide.ini." + environment, version);
 				provided(lines, "toolingorg.eclipse.platform.ide", "org.eclipse.platform.ide.ini", version);
 				providesClose(lines);
-				filter(lines, "(&amp;(osgi.arch=x86_64)(osgi.os=win32)(osgi.ws=win32))");
+				filter(lines, environmentFilter);
 				touchpoint(lines, "org.eclipse.equinox.p2.osgi", "1.0.0");
 				touchpointDataOpen(lines, 1);
 				instructionsOpen(lines, 2);
@@ -1067,7 +1124,7 @@ class P2ProfileGenerator {
 				unitClose(lines);
 				break;
 			case TOOLINGWIN32_WIN32_X86_64ORG_ECLIPSE_CORE_RUNTIME:
-				unitOpen(lines, "toolingwin32.win32.x86_64org.eclipse.core.runtime", version, false);
+				unitOpen(lines, "tooling" + environment + "org.eclipse.core.runtime", version, false);
 				hostRequirementsOpen(lines, 2);
 				required(
 					lines,
@@ -1085,9 +1142,9 @@ class P2ProfileGenerator {
 				provided(
 					lines,
 					"org.eclipse.equinox.p2.iu",
-					"toolingwin32.win32.x86_64org.eclipse.core.runtime",
+					"tooling" + environment + "org.eclipse.core.runtime",
 					version);
-				provided(lines, "org.eclipse.equinox.p2.flavor", "toolingwin32.win32.x86_64", "1.0.0");
+				provided(lines, "org.eclipse.equinox.p2.flavor", "tooling" + environment, "1.0.0");
 				providesClose(lines);
 				requiresOpen(lines, 2);
 				required(
@@ -1099,7 +1156,7 @@ class P2ProfileGenerator {
 					true);
 				required(lines, "org.eclipse.equinox.p2.eclipse.type", "bundle", "[1.0.0,2.0.0)", false, false);
 				requiresClose(lines);
-				filter(lines, "(&amp;(osgi.arch=x86_64)(osgi.os=win32)(osgi.ws=win32))");
+				filter(lines, environmentFilter);
 				touchpoint(lines, "null", "0.0.0");
 				touchpointDataOpen(lines, 1);
 				instructionsOpen(lines, 4);
@@ -1229,12 +1286,12 @@ class P2ProfileGenerator {
 	}
 	private static void addPlatformIDEExecutableEclipse(ArrayList<String> lines, Feature feature) {
 		String ver = feature.version;
-		String id = "org.eclipse.platform.ide.executable.win32.win32.x86_64.eclipse";
+		String id = "org.eclipse.platform.ide.executable." + environment + ".eclipse";
 		unitOpen(lines, id, ver, false);
 		providesOpen(lines, 1);
 		provided(lines, id, ver);
 		providesClose(lines);
-		filter(lines, "(&amp;(osgi.arch=x86_64)(osgi.os=win32)(osgi.ws=win32))");
+		filter(lines, environmentFilter);
 		touchpoint(lines, "org.eclipse.equinox.p2.osgi", "1.0.0");
 		touchpointDataOpen(lines, 1);
 		instructionsOpen(lines, 2);
@@ -1255,15 +1312,15 @@ class P2ProfileGenerator {
 	}
 	private static void addPlatformIDEExecutable(ArrayList<String> lines, Feature feature) {
 		String ver = feature.version;
-		String id = "org.eclipse.platform.ide.executable.win32.win32.x86_64";
-		String filter = "(&amp;(osgi.arch=x86_64)(osgi.os=win32)(osgi.ws=win32))";
+		String id = "org.eclipse.platform.ide.executable." + environment;
+		String filter = environmentFilter;
 		unitOpen(lines, id, ver);
 		providesOpen(lines, 2);
 		provided(lines, "org.eclipse.equinox.p2.iu", id, ver);
 		provided(lines, "toolingorg.eclipse.platform.ide", "org.eclipse.platform.ide.executable", ver);
 		providesClose(lines);
 		requiresOpen(lines, 1);
-		required(lines, "org.eclipse.equinox.launcher.win32.win32.x86_64", "0.0.0", filter);
+		required(lines, "org.eclipse.equinox.launcher." + environment, "0.0.0", filter);
 		requiresClose(lines);
 		filter(lines, filter);
 		artifactsOpen(lines, 1);
@@ -1652,13 +1709,13 @@ class P2ProfileGenerator {
 		return String.format("        <property name='maven-%s' value='%s'/>", wrap(key), wrap(value));
 	}
 	private static void addRcpConfigurationUnit(ArrayList<String> lines, Feature rcpConfiguration) {
-		unitOpen(lines, "org.eclipse.rcp.configuration_root.win32.win32.x86_64", rcpConfiguration.version);
+		unitOpen(lines, "org.eclipse.rcp.configuration_root." + environment, rcpConfiguration.version);
 		providesOpen(lines, 1);
-		provided(lines, "org.eclipse.rcp.configuration_root.win32.win32.x86_64", rcpConfiguration.version);
+		provided(lines, "org.eclipse.rcp.configuration_root." + environment, rcpConfiguration.version);
 		providesClose(lines);
-		filter(lines, "(&amp;(osgi.arch=x86_64)(osgi.os=win32)(osgi.ws=win32))");
+		filter(lines, environmentFilter);
 		artifactsOpen(lines, 1);
-		artifact(lines, "binary", "org.eclipse.rcp.configuration_root.win32.win32.x86_64", rcpConfiguration.version);
+		artifact(lines, "binary", "org.eclipse.rcp.configuration_root." + environment, rcpConfiguration.version);
 		artifactsClose(lines);
 		touchpoint(lines, "org.eclipse.equinox.p2.native", "1.0.0");
 		touchpointDataOpen(lines, 2);
@@ -1667,7 +1724,8 @@ class P2ProfileGenerator {
 		instruction(lines, "uninstall", "cleanupzip(source:@artifact, target:${installFolder});");
 		instructionsClose(lines);
 		instructionsOpen(lines, 1);
-		instruction(lines, "install", "chmod(targetDir:${installFolder}, targetFile:eclipse.exe, permissions:755);");
+		String launcher = environment.equals(WIN32_ENVIRONMENT) ? "eclipse.exe" : "eclipse";
+		instruction(lines, "install", "chmod(targetDir:${installFolder}, targetFile:" + launcher + ", permissions:755);");
 		instructionsClose(lines);
 		touchpointDataClose(lines);
 		unitClose(lines);
@@ -2371,37 +2429,31 @@ class P2ProfileGenerator {
 		HashMap<Path, Plugin> originalPlugins = new HashMap<>();
 		List<Path> folders = snapshot.listFolders(Paths.get("plugins"));
 		for(Path path : folders) {
-			Plugin feature = snapshot.getFileAsPlugin(path);
-			originalPlugins.put(fromZipPath(path), feature);
+			Bundle bundle = bundles.get(path);
+			originalPlugins.put(fromZipPath(path), bundle != null ? bundle.plugin() : null);
 		}
 		return originalPlugins;
 	}
-	private static HashMap<Path, Map<String, String>> getPluginToP2Inf() throws IOException {
-		HashMap<Path, Map<String, String>> pluginToP2Inf = new HashMap<>();
-		for(Path plugin : snapshot.listAll(Paths.get("plugins"))) {
-			Path p2Inf = plugin.resolve("META-INF/p2.inf");
-			Map<String, String> properties = snapshot.getFileAsProperties(p2Inf);
-			pluginToP2Inf.put(fromZipPath(plugin), properties);
-		}
-		return pluginToP2Inf;
-	}
-	private static HashMap<Path, Map<String, String>> getPluginToProperties() throws IOException {
-		HashMap<Path, Map<String, String>> pluginToProperties = new HashMap<>();
-		for(Path pluginPath : snapshot.listAll(Paths.get("plugins"))) {
-			Plugin plugin = snapshot.getFileAsPlugin(pluginPath);
-			if(plugin == null) {
-				continue;
-			}
-			Map<String, String> localization = plugin.getLocalization(snapshot);
-			List<Path> metaInfFiles = snapshot.listFilesRecursive(pluginPath.resolve("META-INF"));
-			Optional<Path> optional = metaInfFiles.stream().filter(p -> p.endsWith("pom.properties")).findAny();
-			if(optional.isPresent()) {
-				Map<String, String> pomProperties = snapshot.getFileAsProperties(optional.get());
-				localization = localization.putAll(pomProperties);
-			}
-			pluginToProperties.put(fromZipPath(pluginPath), localization);
+	private static Map<String, String> getPluginP2Inf(Path plugin) throws IOException {
+		return snapshot.getFileAsProperties(plugin.resolve("META-INF/p2.inf"));
+	}
+	private static Map<String, String> getPluginProperties(Path pluginPath) throws IOException {
+		Bundle bundle = bundles.get(pluginPath);
+		if(bundle == null) {
+			return null;
 		}
-		return pluginToProperties;
+		Map<String, String> localization =
+			bundle.localization != null ? snapshot.getFileAsProperties(bundle.localization) : Map.of();
+		Path pomProperties = findPomProperties(pluginPath);
+		if(pomProperties != null) {
+			localization = localization.putAll(snapshot.getFileAsProperties(pomProperties));
+		}
+		return localization;
+	}
+	private static Path findPomProperties(Path pluginPath) {
+		List<Path> metaInfFiles = snapshot.listFilesRecursive(pluginPath.resolve("META-INF"));
+		Optional<Path> optional = metaInfFiles.stream().filter(p -> p.endsWith("pom.properties")).findAny();
+		return optional.orElse(null);
 	}
 	private static Path fromZipPath(String path) {
 		return MainBuildIDE.fromZipPath(path);
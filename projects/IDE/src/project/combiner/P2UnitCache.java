@@ -0,0 +1,129 @@
+package project.combiner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import project.ContentIndex;
+import utils.lists.ArrayList;
+import utils.lists.Files;
+import utils.lists.HashMap;
+import utils.lists.List;
+import utils.streams2.Streams;
+
+class P2UnitCache {
+	private static final int MAGIC = 0x50325531;
+	private final Path file;
+	private final long generator = generatorHash();
+	private HashMap<Long, List<String>> units = new HashMap<>();
+	private HashMap<Long, List<String>> used = new HashMap<>();
+	private boolean changed;
+	private int hits;
+	private int misses;
+	private int lastHits;
+	private int lastMisses;
+
+	P2UnitCache(Path file) {
+		this.file = file;
+	}
+	List<String> get(long key) {
+		List<String> unit = units.get(key);
+		if(unit != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return unit;
+	}
+	int hits() {
+		return lastHits;
+	}
+	int misses() {
+		return lastMisses;
+	}
+	void put(long key, List<String> unit) {
+		if(units.containsKey(key) == false) {
+			changed = true;
+		}
+		used.put(key, unit);
+	}
+	void retainUsed() {
+		if(used.size() != units.size()) {
+			changed = true;
+		}
+		units = used;
+		used = new HashMap<>();
+		lastHits = hits;
+		lastMisses = misses;
+		hits = 0;
+		misses = 0;
+	}
+	void load() throws IOException {
+		units = new HashMap<>();
+		used = new HashMap<>();
+		changed = false;
+		if(Files.isRegularFile(file) == false) {
+			return;
+		}
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if(in.readInt() != MAGIC) {
+				throw new IOException("Not a p2 unit cache: " + file);
+			}
+			if(in.readLong() != generator || generator == 0) {
+				return;
+			}
+			for(int i = 0, n = in.readInt(); i < n; i++) {
+				long key = in.readLong();
+				int size = in.readInt();
+				ArrayList<String> unit = new ArrayList<>(size);
+				for(int j = 0; j < size; j++) {
+					byte[] bytes = new byte[in.readInt()];
+					in.readFully(bytes);
+					unit.add(new String(bytes, StandardCharsets.UTF_8));
+				}
+				units.put(key, unit.toList());
+			}
+		} catch(EOFException e) {
+			units = new HashMap<>();
+			throw new IOException("Truncated p2 unit cache: " + file, e);
+		}
+	}
+	void save() throws IOException {
+		if(changed == false) {
+			return;
+		}
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+			out.writeInt(MAGIC);
+			out.writeLong(generator);
+			out.writeInt(units.size());
+			for(HashMap.Entry<Long, List<String>> entry : units) {
+				out.writeLong(entry.lhs);
+				out.writeInt(entry.rhs.size());
+				for(String line : entry.rhs) {
+					byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		changed = false;
+	}
+	private static long generatorHash() {
+		try(InputStream in = P2ProfileGenerator.class.getResourceAsStream("P2ProfileGenerator.class")) {
+			if(in == null) {
+				return 0;
+			}
+			return ContentIndex.hash(Streams.readFully(in));
+		} catch(IOException e) {
+			return 0;
+		}
+	}
+}
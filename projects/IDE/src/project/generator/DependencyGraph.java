@@ -0,0 +1,245 @@
+package project.generator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import project.Json;
+import utils.lists.ArrayList;
+import utils.lists.Files;
+import utils.lists.HashMap;
+import utils.lists.HashSet;
+import utils.lists.List;
+import utils.lists.Map;
+
+class DependencyGraph {
+	private final String[] names;
+	private final int[] offsets;
+	private final int[] targets;
+	private final int[] component;
+	private final int[][] members;
+	private final int[][] reduced;
+	private final int[] wave;
+	private final int waves;
+
+	DependencyGraph(Map<String, List<String>> dependencies) {
+		HashSet<String> all = new HashSet<>();
+		for(String name : dependencies.keySet()) {
+			all.add(name);
+			all.addAll(dependencies.get(name));
+		}
+		ArrayList<String> sorted = all.toArrayList().sort();
+		names = new String[sorted.size()];
+		for(int i = 0; i < names.length; i++) {
+			names[i] = sorted.get(i);
+		}
+		HashMap<String, Integer> ids = new HashMap<>();
+		for(int i = 0; i < names.length; i++) {
+			ids.put(names[i], i);
+		}
+		offsets = new int[names.length + 1];
+		ArrayList<Integer> edges = new ArrayList<>();
+		for(int i = 0; i < names.length; i++) {
+			offsets[i] = edges.size();
+			List<String> required = dependencies.getOrDefault(names[i], List.of());
+			int[] row = new int[required.size()];
+			for(int j = 0; j < row.length; j++) {
+				row[j] = ids.get(required.get(j));
+			}
+			Arrays.sort(row);
+			for(int j = 0; j < row.length; j++) {
+				if(j == 0 || row[j] != row[j - 1]) {
+					edges.add(row[j]);
+				}
+			}
+		}
+		offsets[names.length] = edges.size();
+		targets = new int[edges.size()];
+		for(int i = 0; i < targets.length; i++) {
+			targets[i] = edges.get(i);
+		}
+		component = new int[names.length];
+		members = stronglyConnect();
+		reduced = reduce();
+		wave = new int[members.length];
+		int count = 0;
+		for(int c = 0; c < members.length; c++) {
+			for(int d : reduced[c]) {
+				wave[c] = Math.max(wave[c], wave[d] + 1);
+			}
+			count = Math.max(count, wave[c] + 1);
+		}
+		waves = count;
+	}
+	ArrayList<List<String>> cycles() {
+		ArrayList<List<String>> cycles = new ArrayList<>();
+		for(int c = 0; c < members.length; c++) {
+			int v = members[c][0];
+			if(members[c].length > 1 || Arrays.binarySearch(targets, offsets[v], offsets[v + 1], v) >= 0) {
+				cycles.add(namesOf(members[c]));
+			}
+		}
+		return cycles;
+	}
+	ArrayList<List<String>> waves() {
+		ArrayList<ArrayList<String>> byWave = new ArrayList<>();
+		for(int w = 0; w < waves; w++) {
+			byWave.add(new ArrayList<>());
+		}
+		for(int c = 0; c < members.length; c++) {
+			byWave.get(wave[c]).addAll(namesOf(members[c]));
+		}
+		ArrayList<List<String>> result = new ArrayList<>();
+		for(ArrayList<String> projects : byWave) {
+			result.add(projects.sort().toList());
+		}
+		return result;
+	}
+	List<String> reducedDependencies(String name) {
+		int v = Arrays.binarySearch(names, name);
+		if(v < 0) {
+			return List.of();
+		}
+		ArrayList<String> result = new ArrayList<>();
+		for(int d : reduced[component[v]]) {
+			result.addAll(namesOf(members[d]));
+		}
+		return result.sort().toList();
+	}
+	void write(Path file) throws IOException {
+		Files.createDirectories(file.getParent());
+		try(Writer out =
+			new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8))) {
+			out.write("{\"projects\":{");
+			for(int v = 0; v < names.length; v++) {
+				out.write(v == 0 ? "\n" : ",\n");
+				Json.writeString(out, names[v]);
+				out.write(":{\"wave\":" + wave[component[v]] + ",\"component\":" + component[v] + ",\"requires\":");
+				writeStrings(out, reducedDependencies(names[v]));
+				out.write("}");
+			}
+			out.write("\n},\"cycles\":[");
+			String separator = "\n";
+			for(List<String> cycle : cycles()) {
+				out.write(separator);
+				separator = ",\n";
+				writeStrings(out, cycle);
+			}
+			out.write("\n],\"waves\":[");
+			separator = "\n";
+			for(List<String> projects : waves()) {
+				out.write(separator);
+				separator = ",\n";
+				writeStrings(out, projects);
+			}
+			out.write("\n]}\n");
+		}
+	}
+	private int[][] stronglyConnect() {
+		int n = names.length;
+		int[] index = new int[n];
+		int[] low = new int[n];
+		int[] cursor = new int[n];
+		int[] stack = new int[n];
+		int[] calls = new int[n];
+		boolean[] onStack = new boolean[n];
+		Arrays.fill(index, -1);
+		ArrayList<int[]> components = new ArrayList<>();
+		int counter = 0;
+		int stackSize = 0;
+		for(int root = 0; root < n; root++) {
+			if(index[root] >= 0) {
+				continue;
+			}
+			int depth = 0;
+			calls[depth++] = root;
+			index[root] = low[root] = counter++;
+			cursor[root] = offsets[root];
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			while(depth > 0) {
+				int v = calls[depth - 1];
+				if(cursor[v] < offsets[v + 1]) {
+					int w = targets[cursor[v]++];
+					if(index[w] < 0) {
+						index[w] = low[w] = counter++;
+						cursor[w] = offsets[w];
+						stack[stackSize++] = w;
+						onStack[w] = true;
+						calls[depth++] = w;
+					} else if(onStack[w]) {
+						low[v] = Math.min(low[v], index[w]);
+					}
+					continue;
+				}
+				if(low[v] == index[v]) {
+					int start = stackSize;
+					do {
+						start--;
+						onStack[stack[start]] = false;
+						component[stack[start]] = components.size();
+					} while(stack[start] != v);
+					int[] found = Arrays.copyOfRange(stack, start, stackSize);
+					Arrays.sort(found);
+					components.add(found);
+					stackSize = start;
+				}
+				depth--;
+				if(depth > 0) {
+					int u = calls[depth - 1];
+					low[u] = Math.min(low[u], low[v]);
+				}
+			}
+		}
+		int[][] result = new int[components.size()][];
+		for(int c = 0; c < result.length; c++) {
+			result[c] = components.get(c);
+		}
+		return result;
+	}
+	private int[][] reduce() {
+		int count = members.length;
+		BitSet[] reach = new BitSet[count];
+		int[][] result = new int[count][];
+		for(int c = 0; c < count; c++) {
+			BitSet direct = new BitSet(count);
+			for(int v : members[c]) {
+				for(int e = offsets[v]; e < offsets[v + 1]; e++) {
+					if(component[targets[e]] != c) {
+						direct.set(component[targets[e]]);
+					}
+				}
+			}
+			BitSet covered = new BitSet(count);
+			for(int d = direct.nextSetBit(0); d >= 0; d = direct.nextSetBit(d + 1)) {
+				covered.or(reach[d]);
+			}
+			reach[c] = (BitSet) covered.clone();
+			reach[c].or(direct);
+			direct.andNot(covered);
+			result[c] = direct.stream().toArray();
+		}
+		return result;
+	}
+	private List<String> namesOf(int[] vertices) {
+		ArrayList<String> result = new ArrayList<>();
+		for(int v : vertices) {
+			result.add(names[v]);
+		}
+		return result.toList();
+	}
+	private static void writeStrings(Writer out, List<String> strings) throws IOException {
+		out.write("[");
+		for(int i = 0, n = strings.size(); i < n; i++) {
+			if(i > 0) {
+				out.write(",");
+			}
+			Json.writeString(out, strings.get(i));
+		}
+		out.write("]");
+	}
+}
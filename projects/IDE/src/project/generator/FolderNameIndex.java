@@ -0,0 +1,119 @@
+package project.generator;
+
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+import utils.lists.HashMap;
+import utils.lists.List;
+
+class FolderNameIndex {
+	private static final class Node {
+		final String name;
+		final Path fileName;
+		final int order;
+		final HashMap<Integer, Node> children = new HashMap<>();
+		int maxDistance;
+
+		Node(String name, Path fileName, int order) {
+			this.name = name;
+			this.fileName = fileName;
+			this.order = order;
+		}
+	}
+
+	private static final class Nearest {
+		Node node;
+		int distance = Integer.MAX_VALUE;
+	}
+
+	private Node root;
+
+	FolderNameIndex(List<Path> folders) {
+		for(int i = 0, n = folders.size(); i < n; i++) {
+			Path fileName = folders.get(i).getFileName();
+			add(fileName.toString(), fileName, i);
+		}
+	}
+	Path nearest(String name) {
+		if(root == null) {
+			throw new NoSuchElementException("No folders to match " + name + " against");
+		}
+		Nearest nearest = new Nearest();
+		search(root, name, nearest);
+		return nearest.node.fileName;
+	}
+	static int distance(String s1, String s2, int limit) {
+		int n = s1.length();
+		int m = s2.length();
+		limit = Math.min(limit, Math.max(n, m));
+		if(Math.abs(n - m) > limit) {
+			return limit + 1;
+		}
+		int[] previous = new int[m + 1];
+		int[] current = new int[m + 1];
+		for(int j = 0; j <= m; j++) {
+			previous[j] = j;
+		}
+		for(int i = 1; i <= n; i++) {
+			int from = Math.max(1, i - limit);
+			int to = Math.min(m, i + limit);
+			current[0] = i;
+			if(from > 1) {
+				current[from - 1] = limit + 1;
+			}
+			int rowMinimum = from == 1 ? i : limit + 1;
+			char c = s1.charAt(i - 1);
+			for(int j = from; j <= to; j++) {
+				int substitution = previous[j - 1] + (c == s2.charAt(j - 1) ? 0 : 1);
+				int value = Math.min(Math.min(previous[j], current[j - 1]) + 1, substitution);
+				current[j] = value;
+				rowMinimum = Math.min(rowMinimum, value);
+			}
+			if(to < m) {
+				current[to + 1] = limit + 1;
+			}
+			if(rowMinimum > limit) {
+				return limit + 1;
+			}
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return Math.min(previous[m], limit + 1);
+	}
+	private void add(String name, Path fileName, int order) {
+		if(root == null) {
+			root = new Node(name, fileName, order);
+			return;
+		}
+		Node node = root;
+		while(true) {
+			int distance = distance(node.name, name, Integer.MAX_VALUE);
+			if(distance == 0) {
+				return;
+			}
+			node.maxDistance = Math.max(node.maxDistance, distance);
+			Node child = node.children.get(distance);
+			if(child == null) {
+				node.children.put(distance, new Node(name, fileName, order));
+				return;
+			}
+			node = child;
+		}
+	}
+	private static void search(Node node, String name, Nearest nearest) {
+		int limit = nearest.node == null ? Integer.MAX_VALUE : nearest.distance + node.maxDistance;
+		int distance = distance(node.name, name, limit);
+		if(distance < nearest.distance || distance == nearest.distance && node.order < nearest.node.order) {
+			nearest.node = node;
+			nearest.distance = distance;
+		}
+		if(distance > limit) {
+			return;
+		}
+		for(HashMap.Entry<Integer, Node> child : node.children) {
+			if(Math.abs(child.lhs - distance) <= nearest.distance) {
+				search(child.rhs, name, nearest);
+			}
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package project.generator;
+
+import java.nio.file.Path;
+import utils.lists.HashMap;
+import utils.lists.List;
+import utils.lists.Pair;
+
+class PathSuffixIndex {
+	private static final class Node {
+		final HashMap<Path, Node> children = new HashMap<>();
+		Path best;
+		int bestScore = Integer.MAX_VALUE;
+	}
+
+	private final Node root = new Node();
+
+	PathSuffixIndex(List<Path> available) {
+		for(Path path : available) {
+			int count = path.getNameCount();
+			int score = path.toString().contains("x-miss-x") ? Integer.MAX_VALUE : count;
+			Node node = root;
+			for(int depth = 1; depth <= count; depth++) {
+				Path name = path.getName(count - depth);
+				node = node.children.computeIfAbsent(name, k -> new Node()).get(name);
+				if(count > depth && (node.best == null || score < node.bestScore)) {
+					node.best = path;
+					node.bestScore = score;
+				}
+			}
+		}
+	}
+	Pair<Pair<Path, Path>, Path> splitLongest(Path target) {
+		int count = target.getNameCount();
+		Node node = root;
+		Path found = null;
+		int length = 0;
+		for(int depth = 1; depth < count; depth++) {
+			node = node.children.get(target.getName(count - depth));
+			if(node == null) {
+				break;
+			}
+			if(node.best != null) {
+				found = node.best;
+				length = depth;
+			}
+		}
+		if(found == null) {
+			return null;
+		}
+		Path src = found.subpath(0, found.getNameCount() - length);
+		Path dst = target.subpath(0, count - length);
+		return new Pair<>(new Pair<>(src, dst), target.subpath(count - length, count));
+	}
+}
@@ -0,0 +1,128 @@
+package project.generator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import jdk.internal.org.objectweb.asm.ClassReader;
+import jdk.internal.org.objectweb.asm.Opcodes;
+import project.Plugin;
+import utils.lists.ArrayList;
+import utils.lists.Files;
+import utils.lists.HashMap;
+import utils.lists.Paths;
+import utils.streams2.Streams;
+
+final class PluginFiles {
+	private static final Path MANIFEST = Paths.get(JarFile.MANIFEST_NAME);
+	final Plugin plugin;
+	final HashMap<Path, Boolean> files;
+
+	PluginFiles(Plugin plugin, HashMap<Path, Boolean> files) {
+		this.plugin = plugin;
+		this.files = files;
+	}
+	static ArrayList<PluginFiles> scan(ArrayList<Path> paths) throws IOException {
+		ArrayList<Callable<PluginFiles>> scans = new ArrayList<>();
+		for(Path path : paths) {
+			scans.add(() -> scan(path));
+		}
+		return Workers.invokeAll(scans);
+	}
+	private static PluginFiles scan(Path fileOrFolder) throws IOException {
+		HashMap<Path, Boolean> files = new HashMap<>();
+		byte[] manifest = null;
+		if(Files.isDirectory(fileOrFolder)) {
+			manifest = scanFolder(fileOrFolder, files);
+		} else if(fileOrFolder.getFileName().toString().toLowerCase(Locale.ENGLISH).endsWith(".jar")) {
+			manifest = scanJar(fileOrFolder, files);
+		}
+		Plugin plugin = manifest != null ? new Plugin(fileOrFolder, manifest) : new Plugin(fileOrFolder, new HashMap<>());
+		return new PluginFiles(plugin, files);
+	}
+	private static byte[] scanFolder(Path folder, HashMap<Path, Boolean> files) throws IOException {
+		byte[] manifest = null;
+		for(Path file : Files.walk(folder).filter(path -> !Files.isDirectory(path)).toList()) {
+			Path path = folder.relativize(file);
+			files.put(path, isListed(path, isPublicCandidate(path) ? Files.readAllBytes(file) : null));
+			if(path.equals(MANIFEST)) {
+				manifest = Files.readAllBytes(file);
+			} else if(isJar(path)) {
+				try(InputStream in = Files.newInputStream(file)) {
+					scanNested(path, in, files);
+				}
+			}
+		}
+		return manifest;
+	}
+	private static byte[] scanJar(Path file, HashMap<Path, Boolean> files) throws IOException {
+		byte[] manifest = null;
+		try(ZipFile zip = new ZipFile(file.toFile())) {
+			for(Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+				ZipEntry entry = entries.nextElement();
+				if(entry.isDirectory()) {
+					continue;
+				}
+				Path path = Paths.get(entry.getName());
+				files.put(path, isListed(path, isPublicCandidate(path) ? read(zip, entry) : null));
+				if(path.equals(MANIFEST)) {
+					manifest = read(zip, entry);
+				} else if(isJar(path)) {
+					try(InputStream in = zip.getInputStream(entry)) {
+						scanNested(path, in, files);
+					}
+				}
+			}
+		}
+		return manifest;
+	}
+	private static void scanNested(Path jar, InputStream in, HashMap<Path, Boolean> files) throws IOException {
+		ZipInputStream zip = new ZipInputStream(in);
+		ZipEntry entry;
+		while((entry = zip.getNextEntry()) != null) {
+			if(entry.isDirectory()) {
+				continue;
+			}
+			Path path = Paths.get(entry.getName());
+			files.put(jar.resolve(path), isListed(path, isPublicCandidate(path) ? Streams.readAllBytes(zip) : null));
+			if(isJar(path)) {
+				scanNested(jar.resolve(path), zip, files);
+			}
+		}
+	}
+	private static byte[] read(ZipFile zip, ZipEntry entry) throws IOException {
+		try(InputStream in = zip.getInputStream(entry)) {
+			return Streams.readAllBytes(in);
+		}
+	}
+	private static boolean isJar(Path path) {
+		return path.getFileName().toString().endsWith(".jar");
+	}
+	private static boolean isInner(Path path) {
+		String file = path.getFileName().toString();
+		return (file.endsWith(".class") || file.endsWith(".java")) && file.contains("$");
+	}
+	private static boolean isPublicCandidate(Path path) {
+		return path.getFileName().toString().endsWith(".class") && isInner(path) == false;
+	}
+	private static boolean isListed(Path path, byte[] bytes) {
+		if(isInner(path)) {
+			return false;
+		}
+		if(bytes != null) {
+			try {
+				return (new ClassReader(bytes).getAccess() & Opcodes.ACC_PUBLIC) != 0;
+			} catch(Exception e) {
+				System.out.println("Invalid class " + path.getFileName() + ": " + e);
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,66 @@
+package project.generator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import utils.lists.Files;
+import utils.lists.HashMap;
+
+class ProjectIndex {
+	private static final int MAGIC = 0x50494431;
+	private final Path file;
+	private final HashMap<String, Long> fingerprints = new HashMap<>();
+	private boolean changed;
+
+	ProjectIndex(Path file) {
+		this.file = file;
+	}
+	synchronized void load() throws IOException {
+		fingerprints.clear();
+		changed = false;
+		if(Files.isRegularFile(file) == false) {
+			return;
+		}
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if(in.readInt() != MAGIC) {
+				throw new IOException("Not a project index: " + file);
+			}
+			for(int i = 0, n = in.readInt(); i < n; i++) {
+				fingerprints.put(in.readUTF(), in.readLong());
+			}
+		} catch(EOFException e) {
+			fingerprints.clear();
+			throw new IOException("Truncated project index: " + file, e);
+		}
+	}
+	synchronized void save() throws IOException {
+		if(changed == false) {
+			return;
+		}
+		Files.createDirectories(file.getParent());
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(fingerprints.size());
+			for(HashMap.Entry<String, Long> entry : fingerprints) {
+				out.writeUTF(entry.lhs);
+				out.writeLong(entry.rhs);
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		changed = false;
+	}
+	synchronized boolean isCurrent(String project, long fingerprint) {
+		Long previous = fingerprints.get(project);
+		return previous != null && previous == fingerprint;
+	}
+	synchronized void put(String project, long fingerprint) {
+		fingerprints.put(project, fingerprint);
+		changed = true;
+	}
+}
@@ -1,21 +1,16 @@
 package project.generator;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.Locale;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collector;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
-import jdk.internal.org.objectweb.asm.ClassReader;
-import jdk.internal.org.objectweb.asm.Opcodes;
+import project.ContentIndex;
 import project.Plugin;
 import utils.lists.ArrayList;
 import utils.lists.Files;
@@ -35,25 +30,39 @@ import utils.streams2.Streams;
 
 public class RegenerateProjectsMain {
 	private static final Path PLUGINS_FOLDER = Paths.get(System.getProperty("user.home", ""), "evening");
+	private static final Path PROJECT_INDEX = Paths.get("").toAbsolutePath().resolve("target/projects.index");
+	private static final Path DEPENDENCY_GRAPH = Paths.get("").toAbsolutePath().resolve("target/dependencies.json");
 	private static final Set<Path> CLASS_FILE_INDICATORS = Set.of(
 		Paths.get("target"),
 		Paths.get("bin"),
 		Paths.get("classes"));
-	private static HashMap<Pair<String, String>, Integer> cachedDistances = new HashMap<>();
+	private static final long GENERATOR = generatorHash();
 
 	public static void main(String[] args) throws IOException {
 		Path root = Paths.get("").toAbsolutePath().getParent().getParent();
-		ArrayList<Plugin> plugins = readModelFiles();
+		ProjectIndex index = new ProjectIndex(PROJECT_INDEX);
+		if(Arrays.asList(args).contains("incremental")) {
+			index.load();
+		}
+		ArrayList<PluginFiles> scanned = readModelFiles();
+		ArrayList<Plugin> plugins = scanned.map(p -> p.plugin);
+		HashMap<String, HashMap<Path, Boolean>> pluginFiles = new HashMap<>();
+		for(PluginFiles scan : scanned) {
+			pluginFiles.put(scan.plugin.id, scan.files);
+		}
 		ArrayList<String> pluginNames = plugins.map(Plugin::name).sort();
 		Map<String, List<Path>> sourceFolders = findSourceFolders(root, pluginNames);
 		printRoots(sourceFolders);
 		generateDotProjects(root, plugins, sourceFolders);
-		generateDotClasspaths(root, plugins, sourceFolders);
+		generateDotClasspaths(root, plugins, pluginFiles, sourceFolders, index);
+		index.save();
 	}
 	private static void generateDotClasspaths(
 		Path root,
 		ReadOnlyList<Plugin> plugins,
-		Map<String, List<Path>> sourceFolders) throws IOException {
+		HashMap<String, HashMap<Path, Boolean>> pluginFiles,
+		Map<String, List<Path>> sourceFolders,
+		ProjectIndex index) throws IOException {
 		Map<String, List<String>> depending = combineDependencies(plugins);
 		Map<String, List<String>> exported = reexportedDependencies(plugins);
 		for(Plugin plugin : plugins) {
@@ -63,38 +72,31 @@ public class RegenerateProjectsMain {
 		Map<String, List<String>> depended = invert(dependents);
 		printDependencies(depended, "->");
 		printDependencies(dependents, "<-");
-		generateClasspaths(root, depended, exported, plugins, sourceFolders);
-	}
-	private static ArrayList<Plugin> readModelFiles() throws IOException {
-		ArrayList<Plugin> plugins = readPluginContents(PLUGINS_FOLDER);
-		for(Plugin plugin : plugins) {
-			Stream<Pair<Path, byte[]>> stream = plugin.contents.entrySet().map(Entry::toPair).stream();
-			IOStream<Pair<Path, byte[]>> expanded = stream.toIO().flatMap(RegenerateProjectsMain::deepExpand);
-			Path bundle = Paths.get(plugin.id + plugin.shape);
-			HashMap<Path, byte[]> hashMap = expanded.toMap(p -> bundle.resolve(p.lhs), Pair::rhs);
-			plugin.contents.clear().putAll(hashMap);
+		generateClasspaths(root, depended, exported, plugins, pluginFiles, sourceFolders, index);
+	}
+	private static ArrayList<PluginFiles> readModelFiles() throws IOException {
+		ArrayList<PluginFiles> plugins = readPluginContents(PLUGINS_FOLDER);
+		for(PluginFiles plugin : plugins) {
+			Path bundle = Paths.get(plugin.plugin.id + plugin.plugin.shape);
+			HashMap<Path, Boolean> hashMap = new HashMap<>();
+			for(Entry<Path, Boolean> file : plugin.files) {
+				hashMap.put(bundle.resolve(file.lhs), file.rhs);
+			}
+			plugin.files.clear().putAll(hashMap);
 		}
 		return plugins;
 	}
-	private static IOStream<Pair<Path, byte[]>> deepExpand(Pair<Path, byte[]> content) throws IOException {
-		String name = content.lhs.getFileName().toString();
-		IOStream<Pair<Path, byte[]>> ioStream = Stream.of(content).toIO();
-		if(name.endsWith(".jar")) {
-			IOStream<Pair<Path, byte[]>> io = readZip(content.rhs).entrySet().stream().toIO();
-			IOStream<Pair<Path, byte[]>> expanded = io.flatMap(RegenerateProjectsMain::deepExpand);
-			IOStream<Pair<Path, byte[]>> ioStream2 = expanded.map(p -> p.keepingRhs(content.lhs.resolve(p.lhs)));
-			return ioStream.concat(ioStream2);
-		}
-		return ioStream;
-	}
 	private static void generateClasspaths(
 		Path root,
 		Map<String, List<String>> depending,
 		Map<String, List<String>> exported,
 		ReadOnlyList<Plugin> plugins,
-		Map<String, List<Path>> sourceFolders) throws IOException {
+		HashMap<String, HashMap<Path, Boolean>> pluginFiles,
+		Map<String, List<Path>> sourceFolders,
+		ProjectIndex index) throws IOException {
 		HashSet<Path> projectFolders = HashSet.of();
 		Path projects = root.resolve("projects");
+		ArrayList<Callable<Boolean>> tasks = new ArrayList<>();
 		for(Plugin plugin : plugins) {
 			String pluginName = plugin.id;
 			String projectName = projectName(sourceFolders, pluginName);
@@ -103,37 +105,131 @@ public class RegenerateProjectsMain {
 				continue;
 			}
 			Path projectFolder = projects.resolve(projectName);
-			Files.createDirectories(projectFolder);
 			projectFolders.add(projectFolder);
-			List<Path> sources = sourceFolders.get(pluginName);
-			List<Path> libs = sources.replaceAll(p -> root.resolve(p));
-			List<String> required = depending.getOrDefault(pluginName, List.of());
-			Set<String> exports = exported.get(pluginName).toSet();
-			writeDotClasspath(projectFolder, pluginName, libs, sourceFolders, required, exports, plugin);
-		}
+			tasks.add(
+				() -> generateClasspath(
+					root,
+					projectFolder,
+					plugin,
+					depending,
+					exported,
+					pluginFiles.get(pluginName),
+					sourceFolders,
+					index));
+		}
+		ArrayList<Boolean> written = Workers.invokeAll(tasks);
+		written.filter(b -> b);
+		System.out.println("\nRegenerated " + written.size() + " of " + tasks.size() + " .classpath files");
 		printUnusedProjects(projectFolders, projects);
-		printDependencyLoops(projects);
+		writeDependencyGraph(projects);
+	}
+	private static boolean generateClasspath(
+		Path root,
+		Path projectFolder,
+		Plugin plugin,
+		Map<String, List<String>> depending,
+		Map<String, List<String>> exported,
+		HashMap<Path, Boolean> pluginFiles,
+		Map<String, List<Path>> sourceFolders,
+		ProjectIndex index) throws IOException {
+		String pluginName = plugin.id;
+		Files.createDirectories(projectFolder);
+		List<Path> sources = sourceFolders.get(pluginName);
+		List<Path> libs = sources.replaceAll(p -> root.resolve(p));
+		List<String> required = depending.getOrDefault(pluginName, List.of());
+		Set<String> exports = exported.get(pluginName).toSet();
+		List<Path> files = sourceFilesForPlugin(pluginName, pluginFiles).toList();
+		long fingerprint = fingerprint(projectFolder, plugin, libs, sourceFolders, required, exports, files);
+		String projectName = projectFolder.getFileName().toString();
+		if(index.isCurrent(projectName, fingerprint) && Files.isRegularFile(projectFolder.resolve(".classpath"))) {
+			return false;
+		}
+		writeDotClasspath(projectFolder, pluginName, libs, sourceFolders, required, exports, files);
+		index.put(projectName, fingerprint);
+		return true;
+	}
+	private static long fingerprint(
+		Path projectFolder,
+		Plugin plugin,
+		List<Path> libs,
+		Map<String, List<Path>> sourceFolders,
+		List<String> required,
+		Set<String> exports,
+		List<Path> files) throws IOException {
+		ContentIndex.Hasher hasher = new ContentIndex.Hasher();
+		update(hasher, "generator " + Long.toHexString(GENERATOR));
+		for(String header : plugin.manifest.keySet().toArrayList().sort()) {
+			update(hasher, header + ": " + plugin.manifest.get(header));
+		}
+		for(String name : required) {
+			update(hasher, "requires " + name + " " + projectPath(sourceFolders, customizeChangeProjectName(name)));
+		}
+		for(String name : exports.toArrayList().sort()) {
+			update(hasher, "exports " + name + " " + projectPath(sourceFolders, customizeChangeProjectName(name)));
+		}
+		for(Path file : files) {
+			update(hasher, file.toString());
+		}
+		for(Path lib : libs) {
+			update(hasher, "lib " + lib);
+			if(Files.isDirectory(lib)) {
+				for(Path file : Files.walk(lib).toList()) {
+					update(hasher, file.toString());
+				}
+			}
+		}
+		for(Path file : listLocallyAvailableFiles(projectFolder)) {
+			update(hasher, "local " + file);
+		}
+		Path override = projectFolder.resolve(".project.override");
+		if(Files.isRegularFile(override)) {
+			byte[] bytes = Files.readAllBytes(override);
+			hasher.update(bytes, 0, bytes.length);
+		}
+		return hasher.hash();
+	}
+	private static void update(ContentIndex.Hasher hasher, String text) {
+		byte[] bytes = (text + "\n").getBytes(StandardCharsets.UTF_8);
+		hasher.update(bytes, 0, bytes.length);
+	}
+	private static long generatorHash() {
+		try(InputStream in = RegenerateProjectsMain.class.getResourceAsStream("RegenerateProjectsMain.class")) {
+			if(in == null) {
+				return 0;
+			}
+			return ContentIndex.hash(Streams.readFully(in));
+		} catch(IOException e) {
+			return 0;
+		}
 	}
 	private static void
 		generateDotProjects(Path root, ArrayList<Plugin> plugins, Map<String, List<Path>> sourceFolders)
 			throws IOException {
-		HashSet<Path> projectFolders = HashSet.of();
 		Path projects = root.resolve("projects");
-		for(int i = 0, n = plugins.size(); i < n; i++) {
-			Plugin plugin = plugins.get(i);
-			String pluginName = plugin.id;
-			String projectName = projectName(sourceFolders, pluginName);
-			if(projectName == null) {
-				continue;
-			}
-			Path projectFolder = projects.resolve(projectName);
-			Files.createDirectories(projectFolder);
-			projectFolders.add(projectFolder);
-			List<Path> sources = sourceFolders.get(pluginName);
-			writeDotProject(projectFolder, projectName, sources);
-			HashMap<String, String> manifest = findRealManifest(root, projectFolder, sources, plugin);
-			plugins.set(i, plugin.manifest(manifest));
+		ArrayList<Callable<Plugin>> tasks = new ArrayList<>();
+		for(Plugin plugin : plugins) {
+			tasks.add(() -> generateDotProject(root, projects, plugin, sourceFolders));
+		}
+		ArrayList<Plugin> updated = Workers.invokeAll(tasks);
+		for(int i = 0, n = updated.size(); i < n; i++) {
+			plugins.set(i, updated.get(i));
+		}
+	}
+	private static Plugin generateDotProject(
+		Path root,
+		Path projects,
+		Plugin plugin,
+		Map<String, List<Path>> sourceFolders) throws IOException {
+		String projectName = projectName(sourceFolders, plugin.id);
+		if(projectName == null) {
+			return plugin;
 		}
+		Path projectFolder = projects.resolve(projectName);
+		Files.createDirectories(projectFolder);
+		List<Path> sources = sourceFolders.get(plugin.id);
+		writeDotProject(projectFolder, projectName, sources);
+		HashMap<String, String> manifest = findRealManifest(root, projectFolder, sources, plugin);
+		return plugin.manifest(manifest);
 	}
 	private static HashMap<String, String> findRealManifest(
 		Path root,
@@ -153,35 +249,22 @@ public class RegenerateProjectsMain {
 		System.out.println("Real manifest not found for plugin: " + plugin.id);
 		return plugin.manifest;
 	}
-	private static void printDependencyLoops(Path projects) throws IOException {
+	private static void writeDependencyGraph(Path projects) throws IOException {
 		Map<String, List<String>> deps;
 		deps =
 			Files.list(projects).map(p -> p.resolve(".classpath")).filter(Files::isRegularFile).map(
 				RegenerateProjectsMain::readRequiredProjects).toMap(Pair::lhs, Pair::rhs).toMap();
-		HashSet<Pair<String, String>> checked = HashSet.of();
-		List<List<String>> chains = deps.keySet().stream().map(List::of).toList().toList();
-		while(chains.notEmpty()) {
-			ArrayList<List<String>> newChains = new ArrayList<>(chains.size() * 10);
-			for(List<String> chain : chains) {
-				if(chain.size() > 1) {
-					String start = chain.get(0);
-					String end = chain.get(-1);
-					if(start.equals(end)) {
-						System.out.println("Chain " + chain.size() + ":\t" + chain);
-					} else {
-						Pair<String, String> pair = Pair.of(start, end);
-						if(checked.contains(pair)) {
-							continue;
-						}
-						checked.add(pair);
-					}
-				}
-				List<String> dep = deps.getOrDefault(chain.get(-1), List.of());
-				List<List<String>> newChain = dep.map(s -> chain.add(s)).toList();
-				newChains.addAll(newChain);
-			}
-			chains = newChains.toList();
+		DependencyGraph graph = new DependencyGraph(deps);
+		for(List<String> cycle : graph.cycles()) {
+			System.out.println("Loop " + cycle.size() + ":\t" + cycle);
+		}
+		ArrayList<List<String>> waves = graph.waves();
+		int widest = 0;
+		for(List<String> wave : waves) {
+			widest = Math.max(widest, wave.size());
 		}
+		System.out.println("Build waves: " + waves.size() + ", widest " + widest + " projects, see " + DEPENDENCY_GRAPH);
+		graph.write(DEPENDENCY_GRAPH);
 	}
 	private static Pair<String, List<String>> readRequiredProjects(Path classpath) throws IOException {
 		ArrayList<String> list = Files.readAllLines(classpath);
@@ -210,8 +293,7 @@ public class RegenerateProjectsMain {
 		Map<String, List<Path>> sourceFolders,
 		List<String> depending,
 		Set<String> exported,
-		Plugin plugin) throws IOException {
-		List<Path> pluginFiles = sourceFilesForPlugin(plugin).toList();
+		List<Path> pluginFiles) throws IOException {
 		List<Path> locallyAvailableFiles = listLocallyAvailableFiles(project);
 		List<Path> availableFiles =
 			deepListAvailableFiles(locallyAvailableFiles, libs, pluginFiles, pluginName, project);
@@ -857,12 +939,12 @@ public class RegenerateProjectsMain {
 	private static HashMap<Pair<Path, Path>, ArrayList<Path>> mapAvailableToFiles(
 		List<Path> available,
 		List<Path> target) {
-		HashMap<Path, ArrayList<Path>> map = available.stream().toMap(Path::getFileName);
+		PathSuffixIndex index = new PathSuffixIndex(available);
 		HashMap<Pair<Path, Path>, ArrayList<Path>> multiMap = new HashMap<>();
 		Path previousTargetFile = null;
 		for(Path targetFile : target) {
 			if(previousTargetFile == null || targetFile.startsWith(previousTargetFile) == false) {
-				Pair<Pair<Path, Path>, Path> splitLongest = splitLongest(targetFile, map.get(targetFile.getFileName()));
+				Pair<Pair<Path, Path>, Path> splitLongest = splitLongest(targetFile, index);
 				if(splitLongest != null) {
 					Pair<Path, Path> key = splitLongest.lhs;
 					Path value = splitLongest.rhs;
@@ -879,7 +961,7 @@ public class RegenerateProjectsMain {
 		}
 		return multiMap;
 	}
-	private static Pair<Pair<Path, Path>, Path> splitLongest(Path target, ArrayList<Path> available) {
+	private static Pair<Pair<Path, Path>, Path> splitLongest(Path target, PathSuffixIndex available) {
 		switch(target.getFileName().toString()) {
 			case "ECLIPSE_.RSA":
 			case "ECLIPSE_.SF":
@@ -893,28 +975,7 @@ public class RegenerateProjectsMain {
 			case ".api_description":
 				return null;
 		}
-		if(available != null) {
-			Comparator<Path> comparator =
-				Comparator.comparing(p -> p.toString().contains("x-miss-x") ? Integer.MAX_VALUE : p.getNameCount());
-			for(int i = 1, n = target.getNameCount(); i < n; i++) {
-				Path subpath = target.subpath(i, n);
-				Stream<Path> stream =
-					available.stream().filter(p -> p.endsWith(subpath) && p.getNameCount() > subpath.getNameCount()).sorted(
-						comparator);
-				ArrayList<Path> sorted = stream.toList();
-				if(sorted.notEmpty()) {
-					Path found = sorted.get(0);
-					int endIndex = found.getNameCount() - subpath.getNameCount();
-					if(endIndex == 0) {
-						throw new IllegalStateException("Ambiguous match from " + target + " and " + available);
-					}
-					Path src = found.subpath(0, endIndex);
-					Path dst = target.subpath(0, i);
-					return new Pair<>(new Pair<>(src, dst), subpath);
-				}
-			}
-		}
-		return null;
+		return available.splitLongest(target);
 	}
 	private static List<Path> listLocallyAvailableFiles(Path root) throws IOException {
 		ArrayList<Path> list = listSourceCode(root.resolve("src"));
@@ -956,13 +1017,11 @@ public class RegenerateProjectsMain {
 		Path subpath2 = p.subpath(off, len);
 		return subpath1.resolve("x-miss-x").resolve(subpath2);
 	}
-	private static ArrayList<Path> sourceFilesForPlugin(Plugin plugin) {
-		HashMap<Path, byte[]> pluginContent = plugin.contents;
-		Stream<Path> stream = pluginContent.keySet().stream().sorted();
+	private static ArrayList<Path> sourceFilesForPlugin(String pluginName, HashMap<Path, Boolean> pluginFiles) {
+		Stream<Path> stream = pluginFiles.keySet().stream().sorted();
 		ArrayList<Path> list =
-			stream.filter(p -> removesInnerClasses(p, pluginContent.get(p))).map(
-				RegenerateProjectsMain::canonicalizeFileNameToMatch).toList();
-		return customizeModelFilesList(plugin.id, list);
+			stream.filter(p -> pluginFiles.get(p)).map(RegenerateProjectsMain::canonicalizeFileNameToMatch).toList();
+		return customizeModelFilesList(pluginName, list);
 	}
 	private static ArrayList<Path> customizeModelFilesList(String pluginName, ArrayList<Path> list) {
 		switch(pluginName) {
@@ -1399,21 +1458,6 @@ public class RegenerateProjectsMain {
 		}
 		return p;
 	}
-	private static boolean removesInnerClasses(Path p, byte[] bytes) {
-		String file = p.getFileName().toString();
-		if((file.endsWith(".class") || file.endsWith(".java")) && file.contains("$")) {
-			return false;
-		}
-		if(file.endsWith(".class")) {
-			try {
-				return (new ClassReader(bytes).getAccess() & Opcodes.ACC_PUBLIC) != 0;
-			} catch(Exception e) {
-				System.out.println("Invalid class " + file + ": " + e);
-				return false;
-			}
-		}
-		return true;
-	}
 	private static void writeDotProject(Path projectFolder, String projectName, List<Path> libs) throws IOException {
 		if(Files.isRegularFile(projectFolder.resolve(".project.override"))) {
 			return;
@@ -1469,8 +1513,9 @@ public class RegenerateProjectsMain {
 			folders.stream().map(libraries::relativize).filter(p -> p.getNameCount() > 1).map(p -> p.subpath(0, 2)).toSet();
 		filterCompileDependencies(unusedLibraries, root);
 		HashMap<String, List<Path>> map = HashMap.of();
+		FolderNameIndex names = new FolderNameIndex(folders);
 		for(String plugin : plugins) {
-			List<Path> libraryFolders = libraryFolders(root, folders, plugin);
+			List<Path> libraryFolders = libraryFolders(root, folders, names, plugin);
 			map.put(plugin, libraryFolders);
 			for(Path libraryFolder : libraryFolders) {
 				if(libraryFolder.getNameCount() > 2) {
@@ -1525,7 +1570,8 @@ public class RegenerateProjectsMain {
 			System.out.printf("%-60s : %s%n", name, list);
 		}
 	}
-	private static List<Path> libraryFolders(Path root, List<Path> folders, String pluginName) {
+	private static List<Path>
+		libraryFolders(Path root, List<Path> folders, FolderNameIndex names, String pluginName) {
 		if(pluginName.endsWith("-2") || pluginName.endsWith("-3")) {
 			pluginName = pluginName.substring(0, pluginName.length() - 2);
 		}
@@ -1559,7 +1605,7 @@ public class RegenerateProjectsMain {
 					Paths.get("libraries/eclipse.rt.equinox.framework/bundles/" + pluginName));
 		}
 		Path pluginPath = customizePluginNameToLibrariesPathMapping(pluginName);
-		Path pluginPathGuess = pluginNameToLibrariesPathLevenshtein(pluginName, folders);
+		Path pluginPathGuess = names.nearest(pluginName);
 		if(pluginPath == null) {
 			pluginPath = pluginPathGuess;
 		} else if(pluginPathGuess.equals(pluginPath)) {
@@ -1647,50 +1693,12 @@ public class RegenerateProjectsMain {
 				return null;
 		}
 	}
-	private static Path pluginNameToLibrariesPathLevenshtein(String pluginName, List<Path> folders) {
-		Comparator<Path> c = Comparator.comparingInt(p -> distanceLevenshtein(p.getFileName().toString(), pluginName));
-		Optional<Path> min = folders.stream().min(c);
-		return min.get().getFileName();
-	}
-	private static int distanceLevenshtein(String s1, String s2) {
-		if(Objects.equals(s1, s2)) {
-			return 0;
-		}
-		if(s1.compareTo(s2) > 0) {
-			String tmp = s2;
-			s2 = s1;
-			s1 = tmp;
-		}
-		Pair<String, String> key = Pair.of(s1, s2);
-		Integer result = cachedDistances.get(key);
-		if(result != null) {
-			return result;
-		}
-		int[][] distance1 = new int[s1.length() + 1][s2.length() + 1];
-		for(int i = 0; i <= s1.length(); i++) {
-			distance1[i][0] = i;
-		}
-		for(int j = 0; j <= s2.length(); j++) {
-			distance1[0][j] = j;
-		}
-		for(int i = 1; i <= s1.length(); i++) {
-			for(int j = 1; j <= s2.length(); j++) {
-				int d1 = distance1[i - 1][j] + 1;
-				int d2 = distance1[i][j - 1] + 1;
-				int d3 = distance1[i - 1][j - 1] + (s1.charAt(i - 1) == s2.charAt(j - 1) ? 0 : 1);
-				distance1[i][j] = Math.min(Math.min(d1, d2), d3);
-			}
-		}
-		result = distance1[s1.length()][s2.length()];
-		cachedDistances.put(key, result);
-		return result;
-	}
 	private static List<Path> sourceInLibraries(Path root, List<Path> folders, Path pluginName) {
 		Stream<Path> stream = folders.stream().filter(path -> path.endsWith(pluginName));
 		Stream<Path> sorted = stream.sorted(Comparator.comparing(path -> path.getNameCount()));
 		return sorted.limit(1).toList().map(path -> root.relativize(path)).toList();
 	}
-	private static Map<String, List<String>> combineDependencies(ReadOnlyList<Plugin> plugins) {
+	public static Map<String, List<String>> combineDependencies(ReadOnlyList<Plugin> plugins) {
 		HashMap<String, List<String>> depending = gatherNames(plugins, "Require-Bundle");
 		addFromFragmentHosts(plugins, depending);
 		HashMap<String, List<String>> importers = gatherNames(plugins, "Import-Package");
@@ -1766,7 +1774,7 @@ public class RegenerateProjectsMain {
 		Stream<Entry<A, List<B>>> stream = dag.entrySet().stream();
 		return stream.flatMap(p -> p.rhs.stream().map(p::keepingLhs));
 	}
-	private static ArrayList<Plugin> readPluginContents(Path pluginsFolder) throws IOException {
+	private static ArrayList<PluginFiles> readPluginContents(Path pluginsFolder) throws IOException {
 		Path binaryInclusions = Paths.get("").toAbsolutePath().resolveSibling("IDE-all-extras/extras/plugins");
 		HashSet<Path> skipped = HashSet.of();
 		if(Files.isDirectory(binaryInclusions)) {
@@ -1776,23 +1784,28 @@ public class RegenerateProjectsMain {
 		}
 		IOStream<Path> stream =
 			Files.walk(pluginsFolder, 3).filter(p -> p.endsWith("plugins") && Files.isDirectory(p)).flatMap(Files::list);
-		IOStream<Path> stream2 = stream.filter(path -> filterExtraPluginsEntries(path, skipped));
-		IOStream<Pair<Path, Map<Path, byte[]>>> stream3 = stream2.map(p -> readContents(p));
-		IOStream<Plugin> stream4 = stream3.map(p -> new Plugin(p.lhs, p.rhs.toHashMap()));
-		HashMap<String, Plugin> map = stream4.toMultiMap(Plugin::name, l -> combinePluginContents(l), m -> m);
-		return map.values().toArrayList().sort();
-	}
-	private static Plugin combinePluginContents(ArrayList<Plugin> plugins) throws IOException {
-		Plugin plugin2 = plugins.sort().get(-1);
+		ArrayList<Path> paths = stream.filter(path -> filterExtraPluginsEntries(path, skipped)).toList();
+		HashMap<String, ArrayList<PluginFiles>> byName = new HashMap<>();
+		for(PluginFiles plugin : PluginFiles.scan(paths)) {
+			byName.computeIfAbsent(plugin.plugin.name(), k -> new ArrayList<>()).get(plugin.plugin.name()).add(plugin);
+		}
+		ArrayList<PluginFiles> plugins = new ArrayList<>();
+		for(ArrayList<PluginFiles> list : byName.values()) {
+			plugins.add(combinePluginContents(list));
+		}
+		return plugins.sort(Comparator.comparing((PluginFiles p) -> p.plugin));
+	}
+	private static PluginFiles combinePluginContents(ArrayList<PluginFiles> plugins) {
+		ArrayList<PluginFiles> sorted = plugins.sort(Comparator.comparing((PluginFiles p) -> p.plugin));
+		Plugin plugin2 = sorted.get(-1).plugin;
 		if(plugin2.name().contains("sdk")) {
 			System.out.println("BREAK");
 		}
-		Path root = plugin2.root;
-		HashMap<Path, byte[]> map = HashMap.of();
-		for(Plugin plugin : plugins) {
-			map.putAll(plugin.contents);
+		HashMap<Path, Boolean> map = HashMap.of();
+		for(PluginFiles plugin : sorted) {
+			map.putAll(plugin.files);
 		}
-		return new Plugin(root, map);
+		return new PluginFiles(plugin2, map);
 	}
 	static void duplicatePlugin(HashMap<String, Plugin> map, String name, String suffix) {
 		if(map.containsKey(name)) {
@@ -1811,34 +1824,4 @@ public class RegenerateProjectsMain {
 	private static String toBundleName(String symbolicName) {
 		return symbolicName.split(";")[0].trim();
 	}
-	private static Pair<Path, Map<Path, byte[]>> readContents(Path fileOrFolder) throws IOException {
-		boolean isFolder = Files.isDirectory(fileOrFolder);
-		Map<Path, byte[]> contents = isFolder ? readFolder(fileOrFolder) : readFile(fileOrFolder);
-		return new Pair<>(fileOrFolder, contents);
-	}
-	private static Map<Path, byte[]> readFolder(Path folder) throws IOException {
-		IOStream<Path> stream = Files.walk(folder).filter(path -> !Files.isDirectory(path));
-		return stream.toMap(folder::relativize, Files::readAllBytes).toMap();
-	}
-	private static Map<Path, byte[]> readFile(Path file) throws IOException {
-		if(!file.getFileName().toString().toLowerCase(Locale.ENGLISH).endsWith(".jar")) {
-			return Map.of();
-		}
-		byte[] readAllBytes = Files.readAllBytes(file);
-		return readZip(readAllBytes);
-	}
-	private static Map<Path, byte[]> readZip(byte[] bytes) throws IOException {
-		HashMap<Path, byte[]> contents = new HashMap<>();
-		try(ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(bytes));) {
-			ZipEntry entry;
-			while((entry = zip.getNextEntry()) != null) {
-				if(!entry.isDirectory()) {
-					Path path = Paths.get(entry.getName());
-					bytes = Streams.readAllBytes(zip);
-					contents.put(path, bytes);
-				}
-			}
-		}
-		return contents.toMap();
-	}
 }
@@ -0,0 +1,44 @@
+package project.generator;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import utils.lists.ArrayList;
+
+final class Workers {
+	private Workers() {
+	}
+	static <T> ArrayList<T> invokeAll(ArrayList<Callable<T>> tasks) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			ArrayList<Future<T>> futures = new ArrayList<>();
+			for(Callable<T> task : tasks) {
+				futures.add(executor.submit(task));
+			}
+			ArrayList<T> results = new ArrayList<>();
+			for(Future<T> future : futures) {
+				try {
+					results.add(future.get());
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(e);
+				} catch(ExecutionException e) {
+					Throwable cause = e.getCause();
+					if(cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					if(cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					throw new IOException(cause);
+				}
+			}
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}